@@ -2,6 +2,7 @@ import graph.Hierarchy;
 import helper.DebugClass;
 import jvm.ClassAnalyzeOptions;
 import jvm.ClassAnalyzer;
+import jvm.LibCache;
 import org.apache.commons.cli.*;
 import org.apache.commons.cli.GnuParser;
 import org.apache.commons.csv.CSVFormat;
@@ -12,136 +13,77 @@ import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.util.CheckClassAdapter;
 import org.objectweb.asm.util.TraceClassVisitor;
+import reduction.AnalysisSnapshot;
+import reduction.BatchScheduler;
 import reduction.GeneralWorkingEnv;
 import reduction.JReduceWorkingEnv;
+import reduction.PredicateCache;
+import reduction.PredicateJournal;
+import reduction.ReductionDaemon;
+import reduction.ReductionStrategy;
+import reduction.WorkingEnv;
 import soot.G;
 
 import java.io.*;
-import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.concurrent.Callable;
-import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 import static org.objectweb.asm.Opcodes.ASM9;
 
 public class Main {
+    // milliseconds a job of runJReduceAll may take before it settles for its best result
+    static final long JOB_TIME_BUDGET = 6 * 60 * 60 * 1000;
+    static final String[] DECOMPILERS = {"cfr", "fernflower", "procyon"};
 
-    public static class ReductionTask implements Callable<Void> {
-        final String name;
-        final String decompiler;
-        final ReentrantLock lock;
-        final CSVPrinter printer;
-
-        public ReductionTask(String name, String decompiler, ReentrantLock lock, CSVPrinter printer) {
-            this.name = name;
-            this.decompiler = decompiler;
-            this.lock = lock;
-            this.printer = printer;
-        }
-
-        @Override
-        public Void call() {
-            final JReduceWorkingEnv env = new JReduceWorkingEnv(name, decompiler,
-                    "reduced2", "reduced2_cls", JReduceWorkingEnv.classCollapse);
-            try {
-                System.out.println(name + " - " + decompiler);
-                env.setTemp();
-                env.removeOldArtifacts();
-
-                // Test if the bug is ASM-preserving
-                final boolean isAsmPreserved = env.runIdentity();
-                // Do reduction only if ASM preserved
-                if (!isAsmPreserved) {
-                    writeRecord(name, decompiler,
-                            "", false, "ASMError", "", 0);
-                }
-
-                long startTime = System.currentTimeMillis();
-                final String ratio = env.runReduction();
-                long endTime = System.currentTimeMillis();
-                writeRecord(name, decompiler,
-                        ratio, env.finalValid, "success", env.finalProgressions, endTime - startTime);
-            } catch (final FileNotFoundException | NoSuchFileException ignored) {
-
-            } catch (final Exception ex) {
-                writeRecord(name, decompiler,
-                        "", false, ex.toString(), "" , 0);
-            }
-            return null;
-        }
-
-        private void writeRecord(String name, String decompiler, String ratio, boolean valid, String success, String finalProgressions, long time) {
-            lock.lock();
-            try {
-                printer.printRecord(name, decompiler, "items+logic+reduced", ratio, valid, success, finalProgressions, time);
-                printer.flush();
-            } catch (Exception ignored) {
-
-            } finally {
-                lock.unlock();
-            }
-        }
-    }
-
-    public static void runJReduceAll() throws IOException, InterruptedException {
-        // final ExecutorService pool = Executors.newWorkStealingPool(1);
-        // final ReentrantLock lock = new ReentrantLock();
-        final FileWriter fw = new FileWriter("logs/hierarchy_log_ch.csv", true);
-        final CSVPrinter printer = new CSVPrinter(fw, CSVFormat.EXCEL);
-
-        printer.printRecord("name", "predicate", "strategy", "ratio", "asm", "status", "progression", "time");
-        printer.flush();
-
-        final String[] decompilers = {"cfr", "fernflower", "procyon"};
-        final File root = new File("/Users/liranxiao/result/full/");
-        // final List<ReductionTask> tasks = new ArrayList<>();
+    /**
+     * Reduce the benchmarks below the folder of `-A`, each one for every decompiler
+     */
+    public static void runJReduceAll(final CommandLine cmd) throws IOException, InterruptedException {
+        final File root = new File(cmd.getOptionValue("A"));
+        final List<BatchScheduler.Job> jobs = new ArrayList<>();
 
         for (final File f: Objects.requireNonNull(root.listFiles())) {
             if (f.isDirectory() && f.getName().startsWith("url")) {
-                final String name = f.getName();
-                for (final String decompiler: decompilers) {
-                    // final ReductionTask task = new ReductionTask(name, decompiler, lock, printer);
-                    // tasks.add(task);
-                    final JReduceWorkingEnv env = new JReduceWorkingEnv(name, decompiler,
-                        "reduced2_mthdrm", "reduced2_cls", JReduceWorkingEnv.classCollapse);
-                    try {
-                        System.out.println(name + " - " + decompiler);
-                        env.setTemp();
-                        env.removeOldArtifacts();
-
-                        // Test if the bug is ASM-preserving
-                        final boolean isAsmPreserved = env.runIdentity();
-                        // Do reduction only if ASM preserved
-                        if (!isAsmPreserved) {
-                            printer.printRecord(name, decompiler, "items+logic+reduced",
-                                    "", false, "ASMError", "", 0);
-                        }
-
-                        long startTime = System.currentTimeMillis();
-                        final String ratio = env.runReduction();
-                        long endTime = System.currentTimeMillis();
-                        printer.printRecord(name, decompiler, "items+logic+reduced",
-                                ratio, env.finalValid, "success", env.finalProgressions, endTime - startTime);
-                    } catch (final FileNotFoundException | NoSuchFileException ignored) {
-
-                    } catch (final Exception ex) {
-                        printer.printRecord(name, decompiler, "items+logic+reduced",
-                                "", false, ex.toString(), "" , 0);
-                    }
-                    printer.flush();
+                for (final String decompiler: DECOMPILERS) {
+                    jobs.add(new BatchScheduler.Job(f.getName(), decompiler,
+                            JReduceWorkingEnv.jreduceFolder(root.toPath(), f.getName(), decompiler)));
                 }
             }
         }
-        // pool.invokeAll(tasks);
-        // pool.shutdown();
 
-        fw.close();
+        // the decompilers of a benchmark are queued together, their reductions share the analysis of identical classes
+        final AnalysisSnapshot.Store snapshots = new AnalysisSnapshot.Store();
+        // -B bounds each job instead of the whole run
+        final long jobTimeBudget = cmd.hasOption("B")
+                ? (long) (Double.parseDouble(cmd.getOptionValue("B")) * 1000) : JOB_TIME_BUDGET;
+        final BatchScheduler scheduler = new BatchScheduler(Paths.get("logs/jobs"),
+                BatchScheduler.defaultParallelism(), jobTimeBudget, "items+logic+reduced");
+        scheduler.run(jobs, (job, workingFolder, timeBudget) -> {
+            final JReduceWorkingEnv env = new JReduceWorkingEnv(workingFolder, "reduced2_mthdrm", "reduced2_cls",
+                    JReduceWorkingEnv.staticPredicatePath(job.decompiler), JReduceWorkingEnv.staticCompilePath(),
+                    job.decompiler, JReduceWorkingEnv.classCollapse);
+            configureJReduce(env, cmd);
+            env.timeBudget = timeBudget;
+            env.snapshots = snapshots;
+            env.setTemp();
+            env.removeOldArtifacts();
+
+            // Test if the bug is ASM-preserving
+            final boolean isAsmPreserved = env.runIdentity();
+            // Do reduction only if ASM preserved
+            if (!isAsmPreserved) {
+                return new BatchScheduler.Result("", false, "ASMError", "");
+            }
+
+            final String ratio = env.runReduction();
+            return new BatchScheduler.Result(ratio, env.finalValid, "success", env.finalProgressions);
+        }, Paths.get("logs/hierarchy_log_ch.csv"));
     }
 
-    public static void runJReduceMulti(final List<ImmutablePair<String, String>> validR) throws IOException, InterruptedException {
+    public static void runJReduceMulti(final List<ImmutablePair<String, String>> validR, final CommandLine cmd)
+            throws IOException, InterruptedException, ParseException {
         final FileWriter f = new FileWriter("logs/hierarchy_individual_log.csv", true);
         final CSVPrinter printer = new CSVPrinter(f, CSVFormat.EXCEL);
         printer.printRecord("name", "predicate", "strategy", "ratio", "asm", "status", "progression");
@@ -151,6 +93,7 @@ public class Main {
             try {
                 final JReduceWorkingEnv env = new JReduceWorkingEnv(p.left, p.right,
                     "reduced2_mthdrm", "reduced2_cls", JReduceWorkingEnv.classCollapse);
+                configureJReduce(env, cmd);
                 env.setTemp();
                 env.removeOldArtifacts();
 
@@ -181,10 +124,12 @@ public class Main {
         f.close();
     }
 
-    public static void runJReduceSingle(final ImmutablePair<String, String> p, final Path path) throws IOException, InterruptedException {
+    public static void runJReduceSingle(final ImmutablePair<String, String> p, final Path path, final CommandLine cmd)
+            throws IOException, InterruptedException, ParseException {
         System.out.println(p.left + " - " + p.right + " - " + path);
         final JReduceWorkingEnv env = new JReduceWorkingEnv(
             p.left, p.right, "reduced2", "reduced2_cls", JReduceWorkingEnv.classCollapse);
+        configureJReduce(env, cmd);
         env.setTemp();
         env.removeOldArtifacts();
         // Test if the bug is ASM-preserving
@@ -218,7 +163,7 @@ public class Main {
         // ca.accept(tcv);
     }
 
-    public static void main(String[] args) throws IOException, InterruptedException {
+    public static Options options() {
         final Options options = new Options();
         options.addOption("w", "wf",true, "working folder");
         options.addOption("t", "target",true, "target path");
@@ -226,51 +171,219 @@ public class Main {
         options.addOption("c", "class", true, "class path");
         options.addOption("p", "predicate", true, "predicate path");
         options.addOption("o", "omit", true, "omitted classes input path");
+        options.addOption("S", "strategy", true, "reduction strategy: binary (default), closure, ddmin or probdd");
+        options.addOption("F", "fixed-point", false, "alternate call removal & parameter subtyping until nothing changes");
+        options.addOption("H", "hierarchical", false, "reduce classes, then methods, then reduction points");
+        options.addOption("M", "components", false, "reduce the unconnected class components separately, concurrently with -j");
+        options.addOption("W", "weighted", false, "split the search by the bytecode weight of the reduction points");
+        options.addOption("G", "galloping", false, "search each kept element down from the previous one");
+        options.addOption("j", "jobs", true, "number of candidates tested in parallel");
+        options.addOption("x", "pipeline", false, "write the next candidates while the predicate runs (without -j)");
+        options.addOption("k", "cache", false, "cache predicate outcomes in the working folder");
+        options.addOption("J", "journal", false, "append every predicate evaluation to the working folder journal");
+        options.addOption("R", "replay", true, "replay the reduction from a journal, without running any predicate");
+        options.addOption("C", "checkpoint", false, "save the reduction state in the working folder at each step");
+        options.addOption("r", "resume", false, "continue the reduction from the saved state (implies -C)");
+        options.addOption("s", "server", false, "keep the predicate running, see GeneralPredicate.SERVER_FLAG");
+        options.addOption("T", "timeout", true, "time limit of a predicate run in seconds");
+        options.addOption("P", "timeout-pass", false, "count a predicate run over the time limit as passing");
+        options.addOption("B", "time-budget", true, "stop the reduction after this many seconds, keeping the best result");
+        options.addOption("N", "predicate-budget", true, "stop the reduction after this many predicate runs, keeping the best result");
+        options.addOption("D", "daemon", true, "serve the reduction jobs of a local port, see ReductionDaemon");
+        options.addOption("A", "jreduce", true, "reduce the decompiler bugs of the benchmarks below this folder");
+        options.addOption("L", "localize", false, "JReduce: search the classes around the expected errors first");
+        options.addOption("d", "decompilers", true,
+                "JReduce: decompile in-process with these jars, e.g. cfr=/a/cfr.jar;procyon=/b/procyon.jar");
+        options.addOption("e", "incremental-decompile", false,
+                "JReduce: with -d, only decompile again the class groups which changed");
+        options.addOption("I", "javac", false, "JReduce: compile the decompiled sources with an in-process javac");
+        options.addOption("i", "incremental-javac", false,
+                "JReduce: only compile again the changed sources and their dependents (implies -I)");
+        return options;
+    }
+
+    private static boolean hasRequiredOptions(final CommandLine cmd) {
+        return cmd.hasOption("l") && cmd.hasOption("c")
+                && cmd.hasOption("p") && cmd.hasOption("t")
+                && cmd.hasOption("w");
+    }
+
+    // Refuse the options the reduction would silently ignore
+    private static void checkOptions(final CommandLine cmd) throws ParseException {
+        final String strategy = cmd.getOptionValue("S", ReductionStrategy.BINARY);
+        // with -M -j the components are reduced concurrently, each one by a closure search
+        if (strategy.equals(ReductionStrategy.CLOSURE)
+                && (cmd.hasOption("x") || (cmd.hasOption("j") && !cmd.hasOption("M")))) {
+            throw new ParseException("The closure strategy tests one candidate at a time, it can't be used with -x or -j");
+        }
+        // only the binary searches save their state, see BinaryPolicy.resume
+        if ((cmd.hasOption("C") || cmd.hasOption("r"))
+                && (cmd.hasOption("H") || cmd.hasOption("M")
+                    || !(strategy.equals(ReductionStrategy.BINARY) || strategy.equals(ReductionStrategy.CLOSURE)))) {
+            throw new ParseException("Checkpoints (-C, -r) need the binary or closure strategy, without -H or -M");
+        }
+        if (!cmd.hasOption("A")
+                && (cmd.hasOption("L") || cmd.hasOption("d") || cmd.hasOption("I") || cmd.hasOption("i"))) {
+            throw new ParseException("-L, -d, -I and -i only apply to the JReduce runs (-A)");
+        }
+        if (cmd.hasOption("d")) {
+            decompilerJars(cmd);
+        } else if (cmd.hasOption("e")) {
+            throw new ParseException("-e needs the in-process decompilers of -d");
+        }
+    }
+
+    // The options of `cmd` shared by the working envs
+    private static void configure(final WorkingEnv<?> env, final CommandLine cmd) {
+        env.strategy = cmd.getOptionValue("S", ReductionStrategy.BINARY);
+        env.fixedPoint = cmd.hasOption("F");
+        env.hierarchical = cmd.hasOption("H");
+        env.components = cmd.hasOption("M");
+        env.weighted = cmd.hasOption("W");
+        env.galloping = cmd.hasOption("G");
+        if (cmd.hasOption("j")) {
+            env.parallelism = Integer.parseInt(cmd.getOptionValue("j"));
+        }
+        env.pipelined = cmd.hasOption("x");
+        env.usePredicateCache = cmd.hasOption("k");
+        env.recordJournal = cmd.hasOption("J");
+        env.useCheckpoint = cmd.hasOption("C");
+        env.resume = cmd.hasOption("r");
+        if (cmd.hasOption("T")) {
+            env.predicateTimeout = (long) (Double.parseDouble(cmd.getOptionValue("T")) * 1000);
+        }
+        env.timeoutAsPass = cmd.hasOption("P");
+        if (cmd.hasOption("B")) {
+            env.timeBudget = (long) (Double.parseDouble(cmd.getOptionValue("B")) * 1000);
+        }
+        if (cmd.hasOption("N")) {
+            env.predicateBudget = Integer.parseInt(cmd.getOptionValue("N"));
+        }
+    }
+
+    // The jars of `-d`, by decompiler
+    private static Map<String, Path> decompilerJars(final CommandLine cmd) throws ParseException {
+        final Map<String, Path> jars = new HashMap<>();
+        if (!cmd.hasOption("d")) {
+            return jars;
+        }
+        for (final String entry: cmd.getOptionValue("d").split(";")) {
+            final int separator = entry.indexOf('=');
+            if (separator <= 0 || !Arrays.asList(DECOMPILERS).contains(entry.substring(0, separator))) {
+                throw new ParseException("Expected <decompiler>=<jar path> in -d, got " + entry);
+            }
+            jars.put(entry.substring(0, separator), Paths.get(entry.substring(separator + 1)));
+        }
+        return jars;
+    }
+
+    // without a jar for its decompiler, a job runs the predicate script
+    private static void configureJReduce(final JReduceWorkingEnv env, final CommandLine cmd) throws ParseException {
+        configure(env, cmd);
+        env.decompilerJar = decompilerJars(cmd).get(env.decompiler);
+        env.incrementalDecompile = cmd.hasOption("e");
+        env.localizeErrors = cmd.hasOption("L");
+        env.inProcessCompile = cmd.hasOption("I");
+        env.incrementalCompile = cmd.hasOption("i");
+    }
+
+    /**
+     * Run the reduction of `cmd`
+     * @param libCache the lib classes kept from a job to the next, or null
+     * @param predicateCaches the predicate caches kept from a job to the next, or null
+     * @return the outcome of the reduction
+     */
+    public static String runGeneral(final CommandLine cmd, final LibCache libCache,
+                                    final Map<Path, PredicateCache> predicateCaches)
+            throws IOException, InterruptedException {
+        final List<Path> libPath = Arrays.stream(cmd.getOptionValue("l").split(";"))
+                .map(Paths::get)
+                .collect(Collectors.toList());
+        final List<Path> classPath = Arrays.stream(cmd.getOptionValue("c").split(";"))
+                .map(Paths::get)
+                .collect(Collectors.toList());;
+        final Path predicatePath = Paths.get(cmd.getOptionValue("p"));
+        final List<Path> targetPath = Arrays.stream(cmd.getOptionValue("t").split(";"))
+                .map(Paths::get)
+                .collect(Collectors.toList());
+        final Path workingFolder = Paths.get(cmd.getOptionValue("w"));
+
+        final HashSet<String> omitClasses = new HashSet<>();
+        if (cmd.hasOption("o")) {
+            final Path omitTxtFile = Paths.get(cmd.getOptionValue("o"));
+            final BufferedReader reader = new BufferedReader(new FileReader(omitTxtFile.toFile()));
+            String line = reader.readLine();
+            while (line != null) {
+                omitClasses.add(line);
+                line = reader.readLine();
+            }
+            reader.close();
+        }
+
+        final GeneralWorkingEnv env = new GeneralWorkingEnv(
+                classPath, libPath, predicatePath, targetPath, workingFolder, omitClasses, GeneralWorkingEnv.methodRemoval);
+        env.libCache = libCache;
+        env.predicateCaches = predicateCaches;
+        configure(env, cmd);
+        env.predicateServer = cmd.hasOption("s");
+        final boolean isAsmPreserved = env.runIdentity();
+        if (!isAsmPreserved) {
+            return "Not ASM preserved";
+        }
+        final Pair<Set<Integer>, Boolean> results = env.runReduction();
+        return results.toString();
+    }
+
+    /**
+     * Serve the jobs of the clients of `port` one after the other, with the options of the command line
+     */
+    public static void runDaemon(final int port, final Options options) throws IOException, InterruptedException {
+        final LibCache libCache = new LibCache();
+        final Map<Path, PredicateCache> predicateCaches = new HashMap<>();
+        final ReductionDaemon daemon = new ReductionDaemon(port, 1, (args) -> {
+            final CommandLine cmd = new GnuParser().parse(options, args);
+            if (cmd.hasOption("R")) {
+                PredicateJournal.replay(Paths.get(cmd.getOptionValue("R")),
+                        cmd.getOptionValue("S", ReductionStrategy.BINARY));
+                return "replayed";
+            }
+            if (!hasRequiredOptions(cmd)) {
+                throw new ParseException("Missing necessary command-line arguments");
+            }
+            checkOptions(cmd);
+            return runGeneral(cmd, libCache, predicateCaches);
+        });
+        daemon.serve();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        final Options options = options();
         final CommandLineParser parser = new GnuParser();
 
         try {
             final CommandLine cmd = parser.parse(options, args);
-            if (!cmd.hasOption("l") || !cmd.hasOption("c")
-                    || !cmd.hasOption("p") || !cmd.hasOption("t")
-                    || !cmd.hasOption("w"))  {
-                System.out.println("Missing necessary command-line arguments");
-                final HelpFormatter formatter = new HelpFormatter();
-                formatter.printHelp("options", options);
+            if (cmd.hasOption("D")) {
+                runDaemon(Integer.parseInt(cmd.getOptionValue("D")), options);
                 return;
             }
-            final List<Path> libPath = Arrays.stream(cmd.getOptionValue("l").split(";"))
-                    .map(Paths::get)
-                    .collect(Collectors.toList());
-            final List<Path> classPath = Arrays.stream(cmd.getOptionValue("c").split(";"))
-                    .map(Paths::get)
-                    .collect(Collectors.toList());;
-            final Path predicatePath = Paths.get(cmd.getOptionValue("p"));
-            final List<Path> targetPath = Arrays.stream(cmd.getOptionValue("t").split(";"))
-                    .map(Paths::get)
-                    .collect(Collectors.toList());
-            final Path workingFolder = Paths.get(cmd.getOptionValue("w"));
-
-            final HashSet<String> omitClasses = new HashSet<>();
-            if (cmd.hasOption("o")) {
-                final Path omitTxtFile = Paths.get(cmd.getOptionValue("o"));
-                final BufferedReader reader = new BufferedReader(new FileReader(omitTxtFile.toFile()));
-                String line = reader.readLine();
-                while (line != null) {
-                    omitClasses.add(line);
-                    line = reader.readLine();
-                }
-                reader.close();
+            if (cmd.hasOption("R")) {
+                PredicateJournal.replay(Paths.get(cmd.getOptionValue("R")),
+                        cmd.getOptionValue("S", ReductionStrategy.BINARY));
+                return;
             }
-
-            final GeneralWorkingEnv env = new GeneralWorkingEnv(
-                    classPath, libPath, predicatePath, targetPath, workingFolder, omitClasses, GeneralWorkingEnv.methodRemoval);
-            final boolean isAsmPreserved = env.runIdentity();
-            if (!isAsmPreserved) {
-                System.out.println("Not ASM preserved");
+            if (cmd.hasOption("A")) {
+                checkOptions(cmd);
+                runJReduceAll(cmd);
+                return;
+            }
+            if (!hasRequiredOptions(cmd))  {
+                System.out.println("Missing necessary command-line arguments");
+                final HelpFormatter formatter = new HelpFormatter();
+                formatter.printHelp("options", options);
                 return;
             }
-            final Pair<Set<Integer>, Boolean> results = env.runReduction();
-            System.out.println(results);
+            checkOptions(cmd);
+            System.out.println(runGeneral(cmd, null, null));
 
         } catch (ParseException e) {
             System.out.println("Get exception: " + e);
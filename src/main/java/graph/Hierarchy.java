@@ -28,6 +28,8 @@ public class Hierarchy {
 
     public final List<ReductionPoint> reductionPoints;
     public int reductionIndex;
+    // rp => the rps which are kept with it: the classes are the same whether they are in the closure or not
+    public final Map<Integer, Set<Integer>> implications;
 
     public final HashMap<ImmutableTriple<String, String, String>, String> computedDescriptor;
 
@@ -39,6 +41,7 @@ public class Hierarchy {
         this.cacheParents = new HashMap<>();
         this.reductionPoints = new ArrayList<>();
         this.reductionIndex = 0;
+        this.implications = new HashMap<>();
         this.computedDescriptor = new HashMap<>();
     }
 
@@ -86,6 +89,51 @@ public class Hierarchy {
     public void clearReductionPoint() {
         reductionIndex = 0;
         reductionPoints.clear();
+        implications.clear();
+    }
+
+    public void addImplication(final int from, final int to) {
+        implications.computeIfAbsent(from, x -> new HashSet<>()).add(to);
+    }
+
+    // Each implication of a group [low, high) ordered base -> derived: only the most derived kept rp matters
+    public void addChainImplications(final int low, final int high) {
+        for (int i = low + 1; i < high; ++i) {
+            addImplication(i, i - 1);
+        }
+    }
+
+    /**
+     * @return `closure` with every rp it implies, transitively
+     */
+    public SortedSet<Integer> implicationClosure(final SortedSet<Integer> closure) {
+        final SortedSet<Integer> result = new TreeSet<>(closure);
+        final Deque<Integer> queue = new ArrayDeque<>(closure);
+        while (!queue.isEmpty()) {
+            for (final int implied: implications.getOrDefault(queue.poll(), Collections.emptySet())) {
+                if (result.add(implied)) {
+                    queue.add(implied);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Update the members of a source class read again after a reduction pass, its supertypes are the same
+     */
+    public void refreshClass(final ClassVertex cv) {
+        final ClassVertex existing = vertices.get(cv.name);
+        if (existing == null || !classNames.contains(cv.name)) {
+            addClass(cv, true);
+            return;
+        }
+        existing.methods.clear();
+        existing.methods.putAll(cv.methods);
+        existing.stubMethods.clear();
+        existing.stubMethods.putAll(cv.stubMethods);
+        existing.fields.clear();
+        existing.fields.putAll(cv.fields);
     }
 
     public void addClass(final ClassVertex cv, final boolean inSrc) {
@@ -1,5 +1,8 @@
 package helper;
 
+import java.io.PrintStream;
+import java.util.concurrent.Callable;
+
 public class GlobalConfig {
     public static boolean debug = true;
     public static boolean debugPredicate = false;
@@ -8,7 +11,36 @@ public class GlobalConfig {
     public static boolean debugClassVerifier = false;
     public static boolean debugClassLoader = false;
 
+    // where the current thread prints, e.g. the client of a daemon job; null: stdout. It is not inherited, the
+    // long-lived threads (e.g. the predicate watchdog) would keep the stream of the job which started them
+    private static final ThreadLocal<PrintStream> output = new ThreadLocal<>();
+
+    public static void setOutput(final PrintStream out) {
+        output.set(out);
+    }
+
+    /**
+     * @return `task`, printing where the current thread prints: the tasks a job submits to an executor use it
+     */
+    public static <T> Callable<T> withOutput(final Callable<T> task) {
+        final PrintStream out = output.get();
+        return () -> {
+            final PrintStream previous = output.get();
+            output.set(out);
+            try {
+                return task.call();
+            } finally {
+                output.set(previous);
+            }
+        };
+    }
+
     public static void println(final String s) {
-        System.out.println(s);
+        final PrintStream out = output.get();
+        if (out == null) {
+            System.out.println(s);
+        } else {
+            out.println(s);
+        }
     }
 }
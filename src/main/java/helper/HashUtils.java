@@ -0,0 +1,42 @@
+package helper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+public class HashUtils {
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static String toHex(final byte[] bytes) {
+        final StringBuilder sb = new StringBuilder();
+        for (final byte b: bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    public static String hash(final byte[] bytes) {
+        return toHex(newDigest().digest(bytes));
+    }
+
+    public static String hash(final String s) {
+        return hash(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // missing files hash to an empty marker, so the identity still changes once they appear
+    public static String hashFile(final Path path) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return "";
+        }
+        return hash(Files.readAllBytes(path));
+    }
+}
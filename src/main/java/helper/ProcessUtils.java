@@ -0,0 +1,87 @@
+package helper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ProcessUtils {
+    /**
+     * @return the OS pid of `process`, or -1 if the JVM does not expose it
+     */
+    public static long pid(final Process process) {
+        try {
+            // Java 9+
+            return (Long) Process.class.getMethod("pid").invoke(process);
+        } catch (final ReflectiveOperationException | RuntimeException ignored) {
+        }
+        try {
+            // UNIXProcess on Java 8
+            final Field field = process.getClass().getDeclaredField("pid");
+            field.setAccessible(true);
+            return field.getLong(process);
+        } catch (final ReflectiveOperationException | RuntimeException e) {
+            return -1;
+        }
+    }
+
+    // All descendants of `pid`, parents before children
+    public static List<Long> descendants(final long pid) {
+        final List<Long> result = new ArrayList<>();
+        final ProcessBuilder builder = new ProcessBuilder("pgrep", "-P", String.valueOf(pid));
+        builder.redirectErrorStream(true);
+        try {
+            final Process pgrep = builder.start();
+            final BufferedReader br = new BufferedReader(new InputStreamReader(pgrep.getInputStream()));
+            String line;
+            while ((line = br.readLine()) != null) {
+                try {
+                    result.add(Long.parseLong(line.trim()));
+                } catch (final NumberFormatException ignored) {
+                }
+            }
+            pgrep.waitFor();
+        } catch (final IOException e) {
+            return result;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return result;
+        }
+        final List<Long> children = new ArrayList<>(result);
+        for (final long child: children) {
+            result.addAll(descendants(child));
+        }
+        return result;
+    }
+
+    /**
+     * Kill `process` and every process it started: destroy() only reaches the direct child (e.g. bash, not java)
+     */
+    public static void destroyTree(final Process process) {
+        final long pid = pid(process);
+        // collect first, the descendants are re-parented once their parent dies
+        final List<Long> descendants = pid == -1 ? new ArrayList<>() : descendants(pid);
+        process.destroyForcibly();
+        if (descendants.isEmpty()) {
+            return;
+        }
+        final List<String> command = new ArrayList<>();
+        command.add("kill");
+        command.add("-KILL");
+        for (final long child: descendants) {
+            command.add(String.valueOf(child));
+        }
+        try {
+            final Process kill = new ProcessBuilder(command).redirectErrorStream(true).start();
+            kill.getInputStream().close();
+            kill.waitFor();
+        } catch (final IOException e) {
+            if (GlobalConfig.debugCommand)
+                GlobalConfig.println("Failed to kill " + descendants + ": " + e);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
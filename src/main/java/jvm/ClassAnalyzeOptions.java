@@ -3,6 +3,8 @@ package jvm;
 public class ClassAnalyzeOptions {
     public boolean doReduction = true;
     public boolean addHierarchy = true;
+    // update the members of the classes already in the hierarchy, see Hierarchy.refreshClass
+    public boolean refreshHierarchy = false;
 
     public boolean checkClassAdapter = true;
 
@@ -14,6 +14,7 @@ import org.objectweb.asm.util.CheckClassAdapter;
 import reduction.ClassSubTypingRP;
 import reduction.ParamSubTypingRP;
 import reduction.RPGroup;
+import reduction.ReductionBlock;
 
 import java.util.*;
 
@@ -66,6 +67,8 @@ public class ClassAnalyzer extends ClassNode {
 
         if (options.addHierarchy) {
             this.hierarchy.addClass(cls, true);
+        } else if (options.refreshHierarchy) {
+            this.hierarchy.refreshClass(cls);
         }
 
         if (this.cv != null)
@@ -124,6 +127,36 @@ public class ClassAnalyzer extends ClassNode {
         final int high = hierarchy.getCurrentIndex();
         this.parentRpGroup.low = low;
         this.parentRpGroup.high = high;
+        hierarchy.addChainImplications(low, high);
+    }
+
+    /**
+     * @return the reduction points of the class, with a child block per method and one for the rest
+     * (e.g. the parent collapsing), or null if the class has none
+     */
+    public ReductionBlock getReductionBlock() {
+        if (rpSection.size() == 0) {
+            return null;
+        }
+        final SortedSet<Integer> all = new TreeSet<>();
+        for (int i = rpSection.low; i < rpSection.high; ++i) {
+            all.add(i);
+        }
+        final ReductionBlock block = new ReductionBlock(this.name, all);
+        final SortedSet<Integer> rest = new TreeSet<>(all);
+        for (final MethodNode method : this.methods) {
+            final RPGroup section = ((MethodAnalyzer) method).rpSection;
+            if (section.size() == 0) {
+                continue;
+            }
+            final SortedSet<Integer> rp = new TreeSet<>(all.subSet(section.low, section.high));
+            rest.removeAll(rp);
+            block.children.add(new ReductionBlock(this.name + "." + method.name + method.desc, rp));
+        }
+        if (!rest.isEmpty()) {
+            block.children.add(new ReductionBlock(this.name, rest));
+        }
+        return block;
     }
 
     public void compute_desc(final SortedSet<Integer> allRp) {
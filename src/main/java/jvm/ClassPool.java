@@ -1,11 +1,16 @@
 package jvm;
 
+import graph.ClassVertex;
 import graph.Hierarchy;
 import helper.GlobalConfig;
+import helper.HashUtils;
+import reduction.ReductionBlock;
 
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.commons.ClassRemapper;
+import org.objectweb.asm.commons.Remapper;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.util.CheckClassAdapter;
 
@@ -14,6 +19,7 @@ import java.lang.reflect.Array;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
 import java.util.*;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
@@ -27,6 +33,10 @@ public class ClassPool {
     final HashMap<Path, ClassAnalyzer> caPool;
     final HashMap<Path, ClassReader> clsPool;
     final HashMap<ClassReader, Integer> outputCntPool;
+    // content hash of the classes produced by the last `writeClasses`
+    private String lastDigest;
+    // bytes of the last written classes per output folder, for in-process consumers such as DecompilerStage
+    final HashMap<Path, SortedMap<String, byte[]>> writtenPool = new HashMap<>();
 
     public ClassPool(final Path inputPath, final Path libPath, final Path outputPath) {
         this.inputPath = new ArrayList<>();
@@ -49,6 +59,23 @@ public class ClassPool {
         this.outputCntPool = new HashMap<>();
     }
 
+    private ClassPool(final ClassPool template, final List<Path> inputPath, final List<Path> libPath,
+                      final List<Path> outputPath) {
+        this.inputPath = inputPath;
+        this.libPath = libPath;
+        this.outputPath = outputPath;
+        this.clsPool = template.clsPool;
+        this.caPool = template.caPool;
+        this.outputCntPool = template.outputCntPool;
+    }
+
+    /**
+     * @return a pool sharing the read & analysed classes of this one, with its own folders and written classes
+     */
+    public ClassPool fork(final List<Path> inputPath, final List<Path> libPath, final List<Path> outputPath) {
+        return new ClassPool(this, inputPath, libPath, outputPath);
+    }
+
     public void readLibs(final Hierarchy hierarchy) throws IOException {
         for (final Path libPath: this.libPath) {
             Files.walk(libPath)
@@ -70,6 +97,21 @@ public class ClassPool {
         }
     }
 
+    /**
+     * Add the lib classes to `hierarchy`, from `cache` unless it is null
+     */
+    public void readLibs(final Hierarchy hierarchy, final LibCache cache) throws IOException {
+        if (cache == null) {
+            readLibs(hierarchy);
+            return;
+        }
+        for (final Path libPath: this.libPath) {
+            for (final ClassVertex cls: cache.get(libPath)) {
+                hierarchy.addClass(cls, false);
+            }
+        }
+    }
+
     public void readClassesSingle(final Path classPath, final Hierarchy hierarchy, final ClassAnalyzeOptions options) throws IOException {
         int cnt = 0;
         for (final Path inputPath: this.inputPath) {
@@ -201,12 +243,94 @@ public class ClassPool {
         }
     }
 
+    // The reduction points grouped by class then by method, in the order of the points
+    public List<ReductionBlock> getReductionBlocks() {
+        final List<ReductionBlock> blocks = new ArrayList<>();
+        for (final ClassAnalyzer ca: caPool.values()) {
+            final ReductionBlock block = ca.getReductionBlock();
+            if (block != null) {
+                blocks.add(block);
+            }
+        }
+        Collections.sort(blocks);
+        return blocks;
+    }
+
+    /**
+     * @return the classes each read class refers to (supertypes, members, code, signatures), by its internal name
+     */
+    public Map<String, Set<String>> getClassReferences() {
+        final Map<String, Set<String>> references = new HashMap<>();
+        for (final ClassReader cr: clsPool.values()) {
+            final Set<String> names = new HashSet<>();
+            final Remapper collector = new Remapper() {
+                @Override
+                public String map(final String internalName) {
+                    names.add(internalName);
+                    return internalName;
+                }
+            };
+            cr.accept(new ClassRemapper(new ClassVisitor(ASM9) {}, collector), ClassReader.SKIP_FRAMES);
+            names.remove(cr.getClassName());
+            references.put(cr.getClassName(), names);
+        }
+        return references;
+    }
+
+    /**
+     * @return a pool sharing the read & analysed classes of this one, writing them to `outputPath`
+     */
+    public ClassPool fork(final List<Path> outputPath) {
+        return fork(inputPath, libPath, outputPath);
+    }
+
+    public List<Path> getOutputPath() {
+        return outputPath;
+    }
+
+    public String getLastDigest() {
+        return lastDigest;
+    }
+
+    /**
+     * @param outputPath one of the output folders of the last write
+     * @return the written class bytes keyed by their relative path (a/b/C.class), or null
+     */
+    public SortedMap<String, byte[]> getWrittenClasses(final Path outputPath) {
+        synchronized (writtenPool) {
+            return writtenPool.get(outputPath);
+        }
+    }
+
+    private SortedMap<String, byte[]> resetWrittenClasses(final Path outputPath) {
+        final SortedMap<String, byte[]> written = new TreeMap<>();
+        synchronized (writtenPool) {
+            writtenPool.put(outputPath, written);
+        }
+        return written;
+    }
+
     public boolean writeClasses(final Hierarchy hierarchy, final SortedSet<Integer> closure, final boolean isFinal) {
-        for (final Path key: clsPool.keySet()) {
+        return writeClasses(hierarchy, closure, isFinal, this.outputPath);
+    }
+
+    /**
+     * Write the reduced classes into another set of output folders, e.g. an isolated candidate workspace
+     * @param outputPath output folders, matching the input paths one by one
+     */
+    public boolean writeClasses(final Hierarchy hierarchy, final SortedSet<Integer> closure, final boolean isFinal,
+                                final List<Path> outputPath) {
+        final MessageDigest digest = HashUtils.newDigest();
+        lastDigest = null;
+        final List<SortedMap<String, byte[]>> written = new ArrayList<>();
+        for (final Path path: outputPath) {
+            written.add(resetWrittenClasses(path));
+        }
+        // visit in a stable order, so that the digest only depends on the written bytes
+        for (final Path key: new TreeSet<>(clsPool.keySet())) {
             final ClassReader cr = clsPool.get(key);
             final ClassAnalyzer ca = caPool.get(key);
-            final Path outputPath = this.outputPath.get(outputCntPool.get(cr));
-            final Path output = outputPath.resolve(key);
+            final Path output = outputPath.get(outputCntPool.get(cr)).resolve(key);
             try {
                 Files.createDirectories(output.getParent());
             } catch (IOException e) {
@@ -243,16 +367,26 @@ public class ClassPool {
                 }
             }
 
+            digest.update(key.toString().getBytes());
+            digest.update((byte) (int) outputCntPool.get(cr));
+            digest.update(outputBytes);
+            written.get(outputCntPool.get(cr)).put(key.toString().replace(File.separatorChar, '/'), outputBytes);
+
             try {
                 Files.write(output, outputBytes);
             } catch (IOException ioException) {
                 ioException.printStackTrace();
             }
         }
+        lastDigest = HashUtils.toHex(digest.digest());
         return true;
     }
 
     public void identityWriteClasses(final Hierarchy hierarchy) {
+        final List<SortedMap<String, byte[]>> written = new ArrayList<>();
+        for (final Path path: this.outputPath) {
+            written.add(resetWrittenClasses(path));
+        }
         clsPool.forEach((key, cr) -> {
             final Path outputPath = this.outputPath.get(outputCntPool.get(cr));
             final Path output = outputPath.resolve(key);
@@ -267,6 +401,7 @@ public class ClassPool {
             cr.accept(cw, 0);
 
             final byte[] outputBytes = cw.toByteArray();
+            written.get(outputCntPool.get(cr)).put(key.toString().replace(File.separatorChar, '/'), outputBytes);
             try {
                 Files.write(output, outputBytes);
             } catch (IOException ioException) {
@@ -0,0 +1,75 @@
+package jvm;
+
+import graph.ClassVertex;
+import graph.Hierarchy;
+import helper.GlobalConfig;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The classes of the lib folders, read once for all the reductions using them. A folder is read again once its
+ * class files change (path, size or modification time). The lib vertices are not modified by the hierarchies,
+ * which share them.
+ */
+public class LibCache {
+    private static final class Entry {
+        final String signature;
+        final List<ClassVertex> classes;
+
+        Entry(final String signature, final List<ClassVertex> classes) {
+            this.signature = signature;
+            this.classes = classes;
+        }
+    }
+
+    private final Map<Path, Entry> entries;
+
+    public LibCache() {
+        this.entries = new HashMap<>();
+    }
+
+    private static List<Path> classFiles(final Path libPath) throws IOException {
+        try (final Stream<Path> files = Files.walk(libPath)) {
+            return files.filter(Files::isRegularFile)
+                    .filter((classfile) -> classfile.toString().endsWith(".class"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static String signature(final List<Path> files) throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        for (final Path file: files) {
+            sb.append(file).append(':').append(Files.size(file)).append(':')
+                    .append(Files.getLastModifiedTime(file).toMillis()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the classes of `libPath`, as LibCollector reads them
+     */
+    public synchronized List<ClassVertex> get(final Path libPath) throws IOException {
+        final Path key = libPath.toAbsolutePath().normalize();
+        final List<Path> files = classFiles(key);
+        final String signature = signature(files);
+        final Entry entry = entries.get(key);
+        if (entry != null && entry.signature.equals(signature)) {
+            return entry.classes;
+        }
+
+        final Hierarchy hierarchy = new Hierarchy();
+        new ClassPool(Collections.emptyList(), Collections.singletonList(key), Collections.emptyList())
+                .readLibs(hierarchy);
+        final List<ClassVertex> classes = new ArrayList<>(hierarchy.vertices.values());
+        entries.put(key, new Entry(signature, classes));
+        if (GlobalConfig.debug)
+            GlobalConfig.println("Lib classes read: " + key + " (" + classes.size() + ")");
+        return classes;
+    }
+}
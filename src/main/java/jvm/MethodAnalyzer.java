@@ -357,6 +357,13 @@ public class MethodAnalyzer extends MethodNode {
 
                 final int realParamIndex = argOffsetMap.get(paramIndex);
                 baseParents.put(realParamIndex, baseParent);
+                // the instructions whose value comes from the parameter
+                int weight = 1;
+                for (final Set<Integer> sources: sourceArgs.values()) {
+                    if (sources.contains(paramIndex)) {
+                        weight += 1;
+                    }
+                }
                 final int low = hierarchy.getCurrentIndex();
                 // the reduction group will be: base, derived1, derive2, currentCls...
                 // non-exist `=>` baseParent
@@ -365,13 +372,18 @@ public class MethodAnalyzer extends MethodNode {
                         continue;
                     }
                     final int idx = hierarchy.nextIndex();
-                    hierarchy.addReductionPoint(new ParamSubTypingRP(idx, realParamIndex, parent));
+                    final ParamSubTypingRP rp = new ParamSubTypingRP(idx, realParamIndex, parent);
+                    rp.weight = weight;
+                    hierarchy.addReductionPoint(rp);
                 }
                 final int idx = hierarchy.nextIndex();
-                hierarchy.addReductionPoint(new ParamSubTypingRP(idx, realParamIndex, paramType));
+                final ParamSubTypingRP rp = new ParamSubTypingRP(idx, realParamIndex, paramType);
+                rp.weight = weight;
+                hierarchy.addReductionPoint(rp);
 
                 final int high = hierarchy.getCurrentIndex();
                 rpGroups.add(new RPGroup(low, high, realParamIndex));
+                hierarchy.addChainImplications(low, high);
             }
         }
 
@@ -515,6 +527,7 @@ public class MethodAnalyzer extends MethodNode {
 
             this.insnMap = new UnionInsnMap(dependency, consumerMap, methodMap);
             this.insnMap.unionNaiveDependency();
+            final Map<AbstractInsnNode, Integer> weights = this.insnMap.getRemovalWeights();
 
             for (final AbstractInsnNode insnNode: methodMap.keySet()) {
                 final MethodInsnNode methodNode = (MethodInsnNode) insnNode;
@@ -526,8 +539,19 @@ public class MethodAnalyzer extends MethodNode {
                 final int idx = hierarchy.nextIndex();
                 rpPoints.put(idx, insnNode);
                 rpReversePoints.put(insnNode, idx);
-                hierarchy.addReductionPoint(
-                        new MethodNopRP(idx, this.instructions.indexOf(insnNode), insnNode));
+                final MethodNopRP rp = new MethodNopRP(idx, this.instructions.indexOf(insnNode), insnNode);
+                rp.weight = weights.get(insnNode);
+                hierarchy.addReductionPoint(rp);
+            }
+
+            // removing a call while keeping the calls blocking it does not change anything
+            for (final Map.Entry<AbstractInsnNode, Set<AbstractInsnNode>> call: insnMap.getRemovalBlockers().entrySet()) {
+                if (rpReversePoints.containsKey(call.getKey())
+                        && call.getValue().stream().allMatch(rpReversePoints::containsKey)) {
+                    for (final AbstractInsnNode blocker: call.getValue()) {
+                        hierarchy.addImplication(rpReversePoints.get(blocker), rpReversePoints.get(call.getKey()));
+                    }
+                }
             }
         } else {
             for (final AbstractInsnNode insnNode: this.instructions) {
@@ -95,6 +95,66 @@ public class UnionInsnMap {
         return removalInsns;
     }
 
+    /**
+     * A call is only reduced if one of its argument groups is removed, see getRemovalInsnGroup.
+     * When a single group can be removed, this gives the calls which have to be removed with the call for that:
+     * keeping any of them keeps the call as it is. The calls with several removable groups are left out.
+     */
+    public Map<AbstractInsnNode, Set<AbstractInsnNode>> getRemovalBlockers() {
+        final Map<AbstractInsnNode, Set<AbstractInsnNode>> blockers = new HashMap<>();
+        for (final Map.Entry<AbstractInsnNode, List<InsnConsumer>> method: methodMap.entrySet()) {
+            Set<AbstractInsnNode> groupBlockers = null;
+            int removable = 0;
+            for (final InsnConsumer argument: method.getValue()) {
+                final InsnConsumer root = find(argument, null);
+                final Set<AbstractInsnNode> calls = new HashSet<>();
+                boolean possible = true;
+                for (final InsnConsumer source: nonUnionReverseEdge.getOrDefault(root, Collections.emptySet())) {
+                    // only a removed call feeding the argument directly is merged into its group
+                    if (source.isMethod() && dependency.containsEdge(source, root)
+                            && dependency.outDegreeOf(source) == 1) {
+                        calls.add(source.insn);
+                    } else {
+                        possible = false;
+                    }
+                }
+                if (possible) {
+                    removable += 1;
+                    groupBlockers = calls;
+                }
+            }
+            if (removable == 1 && !groupBlockers.isEmpty()) {
+                blockers.put(method.getKey(), groupBlockers);
+            }
+        }
+        return blockers;
+    }
+
+    /**
+     * The weight of removing each call: the call and the instructions fused into its argument groups,
+     * which getRemovalInsnGroup removes with it unless another instruction still uses them.
+     */
+    public Map<AbstractInsnNode, Integer> getRemovalWeights() {
+        final Map<InsnConsumer, Set<InsnConsumer>> groups = getReverseParentMap();
+        final Map<AbstractInsnNode, Integer> weights = new HashMap<>();
+        for (final Map.Entry<AbstractInsnNode, List<InsnConsumer>> method: methodMap.entrySet()) {
+            final Set<InsnConsumer> roots = new HashSet<>();
+            for (final InsnConsumer argument: method.getValue()) {
+                roots.add(find(argument, null));
+            }
+            int weight = 1;
+            for (final InsnConsumer root: roots) {
+                for (final InsnConsumer consumer: groups.getOrDefault(root, Collections.emptySet())) {
+                    if (!consumer.isMethod()) {
+                        weight += 1;
+                    }
+                }
+            }
+            weights.put(method.getKey(), weight);
+        }
+        return weights;
+    }
+
     public int getNumOfSets() {
         return count;
     }
@@ -0,0 +1,214 @@
+package reduction;
+
+import graph.Hierarchy;
+import helper.GlobalConfig;
+import jvm.ClassPool;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * What the strategies share: writing a closure of elements, and testing it through the cache & the journal
+ */
+public abstract class AbstractPolicy<T extends Comparable<? super T>> implements ReductionStrategy<T> {
+    protected final Hierarchy hierarchy;
+    protected final Function<SortedSet<T>, SortedSet<Integer>> aggregator;
+
+    // the elements kept so far
+    protected SortedSet<T> progressions;
+    protected SortedSet<T> lastValidAttempt;
+
+    // persistent outcomes of already tested class sets
+    protected PredicateCache cache;
+    // records every evaluation, or answers them when replaying
+    protected PredicateJournal journal;
+    // stops the search early, see overBudget
+    protected ReductionBudget budget;
+    // element => its position in the initial sorted space, which identifies it in the journal
+    private final Map<T, Integer> positions;
+    protected final List<T> initialSpace;
+
+    protected AbstractPolicy(final Hierarchy hierarchy, final List<T> sortedSpace,
+                             final Function<SortedSet<T>, SortedSet<Integer>> aggregator) {
+        this.hierarchy = hierarchy;
+        this.aggregator = aggregator;
+        this.progressions = new TreeSet<>();
+        this.lastValidAttempt = null;
+        this.cache = null;
+        this.journal = null;
+        this.budget = null;
+        this.positions = new HashMap<>();
+        this.initialSpace = new ArrayList<>(sortedSpace);
+        for (int i = 0; i < sortedSpace.size(); ++i) {
+            positions.put(sortedSpace.get(i), i);
+        }
+    }
+
+    @Override
+    public void setCache(final PredicateCache cache) {
+        this.cache = cache;
+    }
+
+    // A replayed journal must come from a search of the same number of elements
+    @Override
+    public void setJournal(final PredicateJournal journal) {
+        this.journal = journal;
+    }
+
+    @Override
+    public void setBudget(final ReductionBudget budget) {
+        this.budget = budget;
+    }
+
+    // The search has to stop and settle for its smallest passing closure
+    protected boolean overBudget() {
+        return budget != null && budget.isExhausted();
+    }
+
+    /**
+     * Record a passing closure, which was written to `targetPath`
+     */
+    protected void passed(final SortedSet<T> closure, final ClassPool classPool, final List<Path> targetPath)
+            throws IOException {
+        lastValidAttempt = closure;
+        if (budget != null && !replaying()) {
+            budget.offer(aggregator.apply(closure).size(), classPool, targetPath);
+        }
+    }
+
+    protected SortedSet<T> elements(final BitSet positions) {
+        final SortedSet<T> result = new TreeSet<>();
+        for (int i = positions.nextSetBit(0); i >= 0; i = positions.nextSetBit(i + 1)) {
+            result.add(initialSpace.get(i));
+        }
+        return result;
+    }
+
+    protected boolean writeCandidate(final SortedSet<T> currentClosure,
+                                     final ClassPool classPool,
+                                     final List<Path> targetPath) throws IOException {
+        if (replaying()) {
+            return true;
+        }
+        final boolean valid;
+        // the hierarchy & the analysed classes may be shared with other reductions, see AnalysisSnapshot
+        synchronized (hierarchy) {
+            classPool.computeClasses(aggregator.apply(currentClosure));
+            valid = classPool.writeClasses(this.hierarchy, aggregator.apply(currentClosure), false, targetPath);
+            hierarchy.clearComputedDesc();
+        }
+        if (!valid) {
+            journalInvalid(currentClosure);
+        }
+        return valid;
+    }
+
+    // A closure which can't be written fails without a predicate run, the replay has to decide it the same way
+    private void journalInvalid(final SortedSet<T> closure) throws IOException {
+        if (journal != null) {
+            journal.append(positions(closure), false, 0, null);
+        }
+    }
+
+    protected boolean replaying() {
+        return journal != null && journal.isReplay();
+    }
+
+    // The positions of the elements of `closure` in the initial sorted space
+    protected BitSet positions(final Collection<T> closure) {
+        final BitSet result = new BitSet(positions.size());
+        for (final T element: closure) {
+            result.set(positions.get(element));
+        }
+        return result;
+    }
+
+    /**
+     * Run the predicate on the classes just written, unless the cache already knows the outcome
+     * @param digest the digest of the written classes
+     */
+    protected boolean testCandidate(final Predicate predicate, final SortedSet<T> closure, final String digest)
+            throws IOException, InterruptedException {
+        if (replaying()) {
+            return journal.replay(positions(closure));
+        }
+        final String key = cache == null ? null : PredicateCache.key(predicate, digest);
+        final PredicateCache.Entry entry = key == null ? null : cache.get(key);
+        final boolean outcome;
+        final long duration;
+        if (entry != null) {
+            if (GlobalConfig.debugPredicate)
+                GlobalConfig.println("\tCached outcome: " + entry.outcome);
+            outcome = entry.outcome;
+            duration = entry.duration;
+        } else {
+            final long startTime = System.currentTimeMillis();
+            if (budget != null) {
+                budget.countRun();
+            }
+            outcome = predicate.runPredicate();
+            duration = System.currentTimeMillis() - startTime;
+            if (key != null) {
+                cache.put(key, outcome, duration);
+            }
+        }
+        if (journal != null) {
+            journal.append(positions(closure), outcome, duration, digest);
+        }
+        return outcome;
+    }
+
+    // Return if the compiler error is preserved
+    public boolean runPredicate(final SortedSet<T> currentClosure,
+                                final ClassPool classPool,
+                                final Predicate predicate) throws IOException, InterruptedException {
+        if (!replaying() && !writeCandidate(currentClosure, classPool, classPool.getOutputPath())) {
+            return false;
+        }
+
+        if (testCandidate(predicate, currentClosure, replaying() ? null : classPool.getLastDigest())) {
+            passed(currentClosure, classPool, replaying() ? null : classPool.getOutputPath());
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean runFinal(final ClassPool classPool, final Predicate predicate) throws IOException, InterruptedException {
+        // out of budget, the smallest passing closure is kept without running the predicate again
+        final boolean settled = overBudget();
+        if (settled && lastValidAttempt != null) {
+            progressions = lastValidAttempt;
+        }
+        boolean valid = true;
+        if (!replaying()) {
+            synchronized (hierarchy) {
+                classPool.computeClasses(aggregator.apply(progressions));
+                valid = classPool.writeClasses(this.hierarchy, aggregator.apply(progressions), false);
+                hierarchy.clearComputedDesc();
+            }
+            if (!valid) {
+                journalInvalid(progressions);
+            }
+        }
+
+        // an invalid write fails like a predicate run, as it is replayed
+        if (valid && (settled
+                || testCandidate(predicate, progressions, replaying() ? null : classPool.getLastDigest()))) {
+            return true;
+        } else if (lastValidAttempt != null) {
+            progressions = lastValidAttempt;
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public SortedSet<T> getProgressions() {
+        return progressions;
+    }
+}
@@ -0,0 +1,142 @@
+package reduction;
+
+import graph.Hierarchy;
+import helper.GlobalConfig;
+import helper.HashUtils;
+import jvm.ClassPool;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * The analysed classes of a benchmark: its hierarchy with the reduction points, and the pool of the analysed
+ * classes. The reductions of identical classes (e.g. one per decompiler) share a snapshot instead of each reading
+ * & analysing them again, each writing through its own fork of the pool. The snapshot is not modified after its
+ * analysis, except while a class is written, which the policies do holding the lock of the hierarchy.
+ */
+public class AnalysisSnapshot {
+    @FunctionalInterface
+    public interface Analysis {
+        /**
+         * Read the libs & the classes of `pool` into `hierarchy`, adding the reduction points
+         */
+        void analyze(Hierarchy hierarchy, ClassPool pool) throws IOException;
+    }
+
+    /**
+     * The snapshots in use, by the content of their classes. A snapshot is dropped once its last reduction
+     * releases it, so only the benchmarks being reduced stay in memory.
+     */
+    public static class Store {
+        private final Map<String, AnalysisSnapshot> snapshots;
+        private final Map<AnalysisSnapshot, Integer> users;
+
+        public Store() {
+            this.snapshots = new HashMap<>();
+            this.users = new HashMap<>();
+        }
+
+        /**
+         * @param option the analysis, snapshots of the same classes but different analyses are distinct
+         * @return the snapshot of the classes of `source` & `lib`, analysed with `analysis` by the first user
+         */
+        public AnalysisSnapshot acquire(final Path source, final Path lib, final int option, final Analysis analysis)
+                throws IOException {
+            final String key = option + ":" + hashFolder(source) + ":" + hashFolder(lib);
+            while (true) {
+                final AnalysisSnapshot snapshot;
+                synchronized (this) {
+                    snapshot = snapshots.computeIfAbsent(key, (k) -> new AnalysisSnapshot(k, source, lib));
+                    users.merge(snapshot, 1, Integer::sum);
+                }
+                final boolean analyzed;
+                try {
+                    analyzed = snapshot.analyze(this, analysis);
+                } catch (final IOException | RuntimeException ex) {
+                    release(snapshot);
+                    throw ex;
+                }
+                if (analyzed) {
+                    return snapshot;
+                }
+                // its analysis failed for another user, start over with a new snapshot
+                release(snapshot);
+            }
+        }
+
+        public synchronized void release(final AnalysisSnapshot snapshot) {
+            if (users.merge(snapshot, -1, Integer::sum) == 0) {
+                users.remove(snapshot);
+                snapshots.remove(snapshot.key, snapshot);
+            }
+        }
+
+        // The next users don't get `snapshot` anymore
+        private synchronized void drop(final AnalysisSnapshot snapshot) {
+            snapshots.remove(snapshot.key, snapshot);
+        }
+
+        private static String hashFolder(final Path folder) throws IOException {
+            return HashUtils.hash(FixedPointTracker.hashClasses(Collections.singletonList(folder)).toString());
+        }
+    }
+
+    private final String key;
+    public final Hierarchy hierarchy;
+    // the analysed classes, read from the folders of the first user
+    private final ClassPool pool;
+    private boolean analyzed;
+    // the analysis threw, the hierarchy is half filled
+    private boolean failed;
+
+    private AnalysisSnapshot(final String key, final Path source, final Path lib) {
+        this.key = key;
+        this.hierarchy = new Hierarchy();
+        this.pool = new ClassPool(source, lib, source);
+        this.analyzed = false;
+        this.failed = false;
+    }
+
+    /**
+     * The other users of the snapshot wait for the first one to analyse it. A failed analysis drops the snapshot
+     * from `store` before they get the lock, so none of them analyses the half filled hierarchy again.
+     * @return false if the analysis failed for another user
+     */
+    private synchronized boolean analyze(final Store store, final Analysis analysis) throws IOException {
+        if (failed) {
+            return false;
+        }
+        if (analyzed) {
+            if (GlobalConfig.debug)
+                GlobalConfig.println("Shared analysis: " + hierarchy.reductionPoints.size() + " reduction points");
+            return true;
+        }
+        try {
+            analysis.analyze(hierarchy, pool);
+        } catch (final IOException | RuntimeException ex) {
+            failed = true;
+            store.drop(this);
+            throw ex;
+        }
+        analyzed = true;
+        return true;
+    }
+
+    public List<Integer> getReductionPoints() {
+        final List<Integer> list = new ArrayList<>();
+        for (int i = 0; i < hierarchy.reductionPoints.size(); ++i) {
+            list.add(i);
+        }
+        return list;
+    }
+
+    /**
+     * @return a pool of the analysed classes, resolving the classes in the folders of the caller and writing
+     * them to `target`
+     */
+    public ClassPool fork(final Path source, final Path lib, final Path target) {
+        return pool.fork(Collections.singletonList(source), Collections.singletonList(lib),
+                Collections.singletonList(target));
+    }
+}
@@ -0,0 +1,236 @@
+package reduction;
+
+import helper.GlobalConfig;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.io.FileUtils;
+
+import java.io.FileNotFoundException;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs the reductions of a corpus concurrently. Each job works on its own copy of its folder, gets a time budget
+ * (see ReductionBudget) and is interrupted if it overruns it, and its result goes to a CSV file through a single
+ * writer thread.
+ */
+public class BatchScheduler {
+    // assumed peak heap of a reduction, a job only starts once that much is free (or nothing else runs)
+    public static final long MEMORY_PER_JOB = 1L << 30;
+    // after its time budget, what a job gets to write its best result before being interrupted
+    public static final long TIMEOUT_GRACE = 60_000;
+    // how often a job waiting for memory checks again
+    static final long MEMORY_POLL = 1_000;
+
+    public static final class Job {
+        public final String name;
+        public final String decompiler;
+        // copied to the private working folder of the job
+        public final Path folder;
+
+        public Job(final String name, final String decompiler, final Path folder) {
+            this.name = name;
+            this.decompiler = decompiler;
+            this.folder = folder;
+        }
+
+        @Override
+        public String toString() {
+            return name + " - " + decompiler;
+        }
+    }
+
+    public static final class Result {
+        public final String ratio;
+        public final boolean valid;
+        public final String status;
+        public final String progressions;
+
+        public Result(final String ratio, final boolean valid, final String status, final String progressions) {
+            this.ratio = ratio;
+            this.valid = valid;
+            this.status = status;
+            this.progressions = progressions;
+        }
+    }
+
+    @FunctionalInterface
+    public interface JobRunner {
+        /**
+         * @param workingFolder the private copy of `job.folder`
+         * @param timeBudget milliseconds the reduction may take, 0: unbounded
+         * @return null if the job has nothing to reduce
+         */
+        Result run(Job job, Path workingFolder, long timeBudget) throws Exception;
+    }
+
+    // Writes the records queued by the jobs, flushing whenever the queue is drained
+    private static final class ResultSink implements Runnable {
+        private static final List<Object> END = new ArrayList<>();
+
+        private final BlockingQueue<List<Object>> queue;
+        private final CSVPrinter printer;
+
+        ResultSink(final CSVPrinter printer) {
+            this.queue = new LinkedBlockingQueue<>();
+            this.printer = printer;
+        }
+
+        void add(final Object... record) {
+            queue.add(Arrays.asList(record));
+        }
+
+        void end() {
+            queue.add(END);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    final List<Object> record = queue.take();
+                    if (record == END) {
+                        break;
+                    }
+                    printer.printRecord(record);
+                    if (queue.isEmpty()) {
+                        printer.flush();
+                    }
+                }
+                printer.flush();
+            } catch (final IOException | InterruptedException ex) {
+                GlobalConfig.println("Result sink stopped: " + ex);
+            }
+        }
+    }
+
+    private final Path jobsRoot;
+    private final int parallelism;
+    private final long timeBudget;
+    private final String strategy;
+    // jobs admitted and not done yet, guarded by the lock of the scheduler
+    private int running;
+
+    /**
+     * @param jobsRoot the private working folders go in this folder, one per job
+     * @param parallelism jobs running at once, see defaultParallelism
+     * @param timeBudget milliseconds each job may take, 0: unbounded
+     * @param strategy the strategy column of the records
+     */
+    public BatchScheduler(final Path jobsRoot, final int parallelism, final long timeBudget, final String strategy) {
+        this.jobsRoot = jobsRoot;
+        this.parallelism = parallelism;
+        this.timeBudget = timeBudget;
+        this.strategy = strategy;
+        this.running = 0;
+    }
+
+    // As many jobs as cores, as long as the heap holds MEMORY_PER_JOB for each
+    public static int defaultParallelism() {
+        final long byMemory = Runtime.getRuntime().maxMemory() / MEMORY_PER_JOB;
+        return (int) Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), byMemory));
+    }
+
+    private static long freeMemory() {
+        final Runtime runtime = Runtime.getRuntime();
+        return runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+    }
+
+    /**
+     * Run every job, appending a record per job to `csvPath`
+     */
+    public void run(final List<Job> jobs, final JobRunner runner, final Path csvPath)
+            throws IOException, InterruptedException {
+        final FileWriter fw = new FileWriter(csvPath.toFile(), true);
+        final CSVPrinter printer = new CSVPrinter(fw, CSVFormat.EXCEL);
+        printer.printRecord("name", "predicate", "strategy", "ratio", "asm", "status", "progression", "time");
+
+        final ResultSink sink = new ResultSink(printer);
+        final Thread sinkThread = new Thread(sink, "result-sink");
+        sinkThread.start();
+        final ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+        final ScheduledExecutorService watchdogs = Executors.newSingleThreadScheduledExecutor();
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (final Job job: jobs) {
+                futures.add(pool.submit(GlobalConfig.withOutput(() -> {
+                    runJob(job, runner, sink, watchdogs);
+                    return null;
+                })));
+            }
+            for (final Future<?> future: futures) {
+                try {
+                    future.get();
+                } catch (final ExecutionException ex) {
+                    GlobalConfig.println("Job failed: " + ex.getCause());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+            watchdogs.shutdownNow();
+            sink.end();
+            sinkThread.join();
+            fw.close();
+        }
+    }
+
+    // The heap is shared by the jobs, wait for the running ones to release some. The check & the count of the job
+    // are one step, two jobs can't take the same free memory.
+    private synchronized void admit() throws InterruptedException {
+        while (running > 0 && freeMemory() < MEMORY_PER_JOB) {
+            wait(MEMORY_POLL);
+        }
+        running += 1;
+    }
+
+    private synchronized void leave() {
+        running -= 1;
+        notifyAll();
+    }
+
+    private void runJob(final Job job, final JobRunner runner, final ResultSink sink,
+                        final ScheduledExecutorService watchdogs) throws InterruptedException {
+        admit();
+        final Thread worker = Thread.currentThread();
+        final AtomicBoolean timedOut = new AtomicBoolean(false);
+        final ScheduledFuture<?> watchdog = timeBudget <= 0 ? null : watchdogs.schedule(() -> {
+            timedOut.set(true);
+            worker.interrupt();
+        }, timeBudget + TIMEOUT_GRACE, TimeUnit.MILLISECONDS);
+        final long startTime = System.currentTimeMillis();
+        try {
+            System.out.println(job);
+            final Path workingFolder = jobsRoot.resolve(job.name + "-" + job.decompiler);
+            FileUtils.deleteDirectory(workingFolder.toFile());
+            Files.createDirectories(jobsRoot);
+            FileUtils.copyDirectory(job.folder.toFile(), workingFolder.toFile());
+
+            final Result result = runner.run(job, workingFolder, timeBudget);
+            if (result != null) {
+                sink.add(job.name, job.decompiler, strategy, result.ratio, result.valid, result.status,
+                        result.progressions, System.currentTimeMillis() - startTime);
+            }
+        } catch (final FileNotFoundException | NoSuchFileException ignored) {
+            // not a benchmark of this decompiler
+        } catch (final Exception ex) {
+            // the interruption may surface as any I/O error
+            sink.add(job.name, job.decompiler, strategy, "", false, timedOut.get() ? "timeout" : ex.toString(), "",
+                    System.currentTimeMillis() - startTime);
+        } finally {
+            if (watchdog != null) {
+                watchdog.cancel(false);
+            }
+            // an interruption which came too late for the job must not reach the next one
+            Thread.interrupted();
+            leave();
+        }
+    }
+}
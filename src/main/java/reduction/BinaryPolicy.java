@@ -5,21 +5,53 @@ import helper.GlobalConfig;
 import jvm.ClassPool;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
-public class BinaryPolicy<T extends Comparable<? super T>> {
-    private final Hierarchy hierarchy;
-
-    private SortedSet<T> progressions;
+/**
+ * Finds the elements to keep one at a time, each by a binary search of the first necessary element
+ */
+public class BinaryPolicy<T extends Comparable<? super T>> extends AbstractPolicy<T> {
     private List<T> sortedSpace;
+    private final List<T> searchOrder;
     public final int callSiteSize;
 
-    private final Function<SortedSet<T>, SortedSet<Integer>> aggregator;
-
     private int retryCounter;
-    private SortedSet<T> lastValidAttempt;
+
+    // isolated candidate folders for evaluating several split points at once
+    private List<Workspace> workspaces;
+    // write the next candidates of both outcomes while the predicate runs, see runPipelined
+    private boolean pipelined;
+    // saved at each progression, see resume
+    private Path checkpointPath;
+    private int checkpointRound;
+    private int checkpointPass;
+    // split the intervals by the weight of their reduction points instead of their length, see split
+    private boolean weighted;
+    private final Map<T, Long> weights;
+    // cumulativeWeights[i]: weight of the first i elements of the sorted space, set at each progression
+    private long[] cumulativeWeights;
+    // search down from the previous necessary element instead of bisecting the sorted space, see runGallop
+    private boolean galloping;
+
+    // the search stops after this many progressions, keeping what is left of the sorted space
+    static final int MAX_PROGRESSIONS = 500;
+    // after this many progressions, an interval ending the sorted space and shorter than
+    // 1/STEP_OUT_FRACTION of it is kept whole instead of being searched (see stepOut)
+    static final int STEP_OUT_AFTER = 25;
+    static final int STEP_OUT_FRACTION = 100;
+    // once the budget runs low (see ReductionBudget.isLow), any interval ending the sorted space and shorter than
+    // 1/LOW_BUDGET_STEP_OUT_FRACTION of it is kept whole: the budget goes to the searches which drop the most
+    static final int LOW_BUDGET_STEP_OUT_FRACTION = 10;
+
+    // workspaces used by the pipelined search: the candidate under test and the next one of either outcome
+    public static final int PIPELINE_WORKSPACES = 3;
+    // milliseconds the cancelled predicates have to stop before the search gives up on their workspaces
+    static final long CANCEL_GRACE = 60 * 1000;
 
     static final Function<SortedSet<Integer>, SortedSet<Integer>> ID_AGGREGATOR = (x) -> x;
 
@@ -28,34 +60,140 @@ public class BinaryPolicy<T extends Comparable<? super T>> {
                     .map((rp) -> rp.globalIndex)
                     .collect(Collectors.toCollection(TreeSet::new));
 
-    static final Function<SortedSet<List<ReductionPoint>>, SortedSet<Integer>> BLOCK_AGGREGATOR = (x) ->
-            x.stream()
-                    .flatMap(List::stream)
-                    .map((rp) -> rp.globalIndex)
-                    .collect(Collectors.toCollection(TreeSet::new));
-
-    static final Function<SortedSet<List<List<ReductionPoint>>>, SortedSet<Integer>> BLOCK2_AGGREGATOR = (x) ->
+    static final Function<SortedSet<ReductionBlock>, SortedSet<Integer>> BLOCK_AGGREGATOR = (x) ->
             x.stream()
-                    .flatMap(List::stream)
-                    .flatMap(List::stream)
-                    .map((rp) -> rp.globalIndex)
+                    .flatMap((block) -> block.reductionPoints.stream())
                     .collect(Collectors.toCollection(TreeSet::new));
 
     public BinaryPolicy(final Hierarchy hierarchy, final List<T> sortedSpace,
                         final Function<SortedSet<T>, SortedSet<Integer>> aggregator) {
-        this.hierarchy = hierarchy;
-        this.progressions = new TreeSet<>();
-        this.sortedSpace = sortedSpace;
-        this.aggregator = aggregator;
+        this(hierarchy, sortedSpace, sortedSpace, aggregator);
+    }
+
+    /**
+     * @param searchOrder the elements of `sortedSpace` in the order of the search,
+     *                    the journal & the checkpoints still number them by `sortedSpace`
+     */
+    protected BinaryPolicy(final Hierarchy hierarchy, final List<T> sortedSpace, final List<T> searchOrder,
+                           final Function<SortedSet<T>, SortedSet<Integer>> aggregator) {
+        super(hierarchy, sortedSpace, aggregator);
+        this.sortedSpace = new ArrayList<>(searchOrder);
+        this.searchOrder = searchOrder;
         this.callSiteSize = sortedSpace.size();
-        this.lastValidAttempt = null;
         this.retryCounter = 0;
+        this.workspaces = Collections.emptyList();
+        this.pipelined = false;
+        this.checkpointPath = null;
+        this.weighted = false;
+        this.weights = new HashMap<>();
+        this.cumulativeWeights = null;
+        this.galloping = false;
+    }
+
+    /**
+     * Enable the parallel k-ary search, each split point is written & tested in its own workspace
+     * @param workspaces k isolated workspaces, k <= 1 keeps the sequential binary search
+     */
+    @Override
+    public void setWorkspaces(final List<Workspace> workspaces) {
+        this.workspaces = workspaces;
     }
 
+    /**
+     * Enable the pipelined binary search, which takes over the workspaces
+     * @param workspaces at least PIPELINE_WORKSPACES isolated workspaces
+     */
+    @Override
+    public void setPipelined(final List<Workspace> workspaces) {
+        this.workspaces = workspaces;
+        this.pipelined = workspaces.size() >= PIPELINE_WORKSPACES;
+    }
+
+    @Override
+    public void setWeighted(final boolean weighted) {
+        this.weighted = weighted;
+    }
+
+    @Override
+    public void setGalloping(final boolean galloping) {
+        this.galloping = galloping;
+    }
+
+    @Override
+    public void setCheckpoint(final Path checkpointPath, final int round, final int pass) {
+        this.checkpointPath = checkpointPath;
+        this.checkpointRound = round;
+        this.checkpointPass = pass;
+    }
+
+    /**
+     * Continue from the checkpoint, if it was saved by a reduction of the same elements
+     * @return false if the reduction starts over
+     */
+    @Override
+    public boolean resume(final ClassPool classPool) throws IOException {
+        final ReductionCheckpoint checkpoint = ReductionCheckpoint.load(checkpointPath);
+        if (checkpoint == null || checkpoint.round != checkpointRound || checkpoint.pass != checkpointPass
+                || checkpoint.size != initialSpace.size()) {
+            return false;
+        }
+        final SortedSet<T> resumed = elements(checkpoint.progressions);
+        // the elements are numbered by the analysis, which has to agree with the one of the killed run
+        writeCandidate(resumed, classPool, classPool.getOutputPath());
+        if (checkpoint.digest == null || !checkpoint.digest.equals(classPool.getLastDigest())) {
+            if (GlobalConfig.debug)
+                GlobalConfig.println("\tCheckpoint of different classes, starting over");
+            return false;
+        }
+        progressions = resumed;
+        // the sorted space is a subsequence of the search order
+        final Set<T> remaining = elements(checkpoint.sortedSpace);
+        sortedSpace = new ArrayList<>();
+        for (final T element: searchOrder) {
+            if (remaining.contains(element)) {
+                sortedSpace.add(element);
+            }
+        }
+        retryCounter = checkpoint.retryCounter;
+        lastValidAttempt = checkpoint.lastValidAttempt == null ? null : elements(checkpoint.lastValidAttempt);
+        if (GlobalConfig.debug)
+            GlobalConfig.println("\tResumed at the " + retryCounter + "-th element: " + progressions);
+        return true;
+    }
+
+    // The checkpoint of the current progression, once the classes of `progressions` are written
+    private void saveCheckpoint(final ClassPool classPool) throws IOException {
+        if (checkpointPath == null || replaying()) {
+            return;
+        }
+        final String digest = classPool.getLastDigest();
+        if (digest == null) {
+            // the progressions could not be written, the last checkpoint stays the one to resume from
+            return;
+        }
+        new ReductionCheckpoint(checkpointRound, checkpointPass, initialSpace.size(), retryCounter,
+                positions(progressions), positions(sortedSpace),
+                lastValidAttempt == null ? null : positions(lastValidAttempt),
+                digest).save(checkpointPath);
+    }
+
+    @Override
     public void runReduction(final ClassPool classPool,
                             final Predicate predicate) throws IOException, InterruptedException {
-        while (!sortedSpace.isEmpty() && retryCounter < 500) {
+        while (!sortedSpace.isEmpty() && retryCounter < MAX_PROGRESSIONS) {
             final int r = runProgression(classPool, predicate);
+            if (overBudget()) {
+                // the search may have been cut short, keep the last passing closure which contains the others
+                if (lastValidAttempt != null) {
+                    progressions = lastValidAttempt;
+                } else {
+                    progressions.addAll(sortedSpace);
+                }
+                sortedSpace.clear();
+                if (GlobalConfig.debug)
+                    GlobalConfig.println("\tOut of budget at the " + retryCounter + "-th element");
+                break;
+            }
             if (r != -1) {
                 if (GlobalConfig.debug)
                     GlobalConfig.println("\t" + retryCounter + "-th element: " + r);
@@ -74,31 +212,63 @@ public class BinaryPolicy<T extends Comparable<? super T>> {
             GlobalConfig.println("\tCurrent progress: " + progressions);
         }
 
-        // if discard all sort space and we still preserve the compiler error, just return
-        if (runPredicate(progressions, classPool, predicate)) {
-            return -1;
+        // the galloping search tests the progressions alone last
+        final boolean gallop = galloping && retryCounter > 0 && !pipelined && workspaces.size() <= 1;
+        if (!gallop) {
+            // if discard all sort space and we still preserve the compiler error, just return
+            final boolean done = runPredicate(progressions, classPool, predicate);
+            saveCheckpoint(classPool);
+            if (done || overBudget()) {
+                return -1;
+            }
+        } else if (checkpointPath != null && !replaying()) {
+            // the classes of the progressions are only written for the digest of the checkpoint
+            writeCandidate(progressions, classPool, classPool.getOutputPath());
+            saveCheckpoint(classPool);
         }
 
         // binary search of the first element necessary for the compiler error
         int l = 0, r = sortedSpace.size();
-        while (r > l) {
-            final SortedSet<T> currentClosure = new TreeSet<>(progressions);
-            final int mid = l + (r - l) / 2;
-            currentClosure.addAll(sortedSpace.subList(0, mid + 1));
-            if (GlobalConfig.debug)
-                GlobalConfig.println("\tCurrent closure: " + Arrays.toString(new int[]{l, mid + 1, r}));
-            if (runPredicate(currentClosure, classPool, predicate)) {
-                r = mid;
-            } else {
-                l = mid + 1;
+        if (weighted) {
+            cumulativeWeights = new long[r + 1];
+            for (int i = 0; i < r; ++i) {
+                cumulativeWeights[i + 1] = cumulativeWeights[i] + weight(sortedSpace.get(i));
             }
+        }
+        if (gallop) {
+            final int[] bound = runGallop(classPool, predicate);
+            if (bound == null) {
+                return -1;
+            }
+            l = bound[0];
+            r = bound[1];
+        }
+        if (pipelined) {
+            final int[] bound = runPipelined(l, r, classPool);
+            l = bound[0];
+            r = bound[1];
+        } else {
+            while (r > l && !overBudget()) {
+                if (workspaces.size() > 1) {
+                    final int[] bound = runSplits(l, r, classPool);
+                    l = bound[0];
+                    r = bound[1];
+                } else {
+                    final SortedSet<T> currentClosure = new TreeSet<>(progressions);
+                    final int mid = split(l, r, 1, 2);
+                    currentClosure.addAll(sortedSpace.subList(0, mid + 1));
+                    if (GlobalConfig.debug)
+                        GlobalConfig.println("\tCurrent closure: " + Arrays.toString(new int[]{l, mid + 1, r}));
+                    if (runPredicate(currentClosure, classPool, predicate)) {
+                        r = mid;
+                    } else {
+                        l = mid + 1;
+                    }
+                }
 
-            // an approximate on stepping out nearby elements
-            if (retryCounter >= 25 && r == sortedSpace.size() && r - l < sortedSpace.size() / 100) {
-                for (int i = l; i < r; ++i) {
-                    progressions.add(sortedSpace.get(i));
+                if (stepOut(l, r) || overBudget()) {
+                    break;
                 }
-                break;
             }
         }
 
@@ -110,44 +280,253 @@ public class BinaryPolicy<T extends Comparable<? super T>> {
         return r;
     }
 
-    // Return if the compiler error is preserved
-    public boolean runPredicate(final SortedSet<T> currentClosure,
-                                final ClassPool classPool,
-                                final Predicate predicate) throws IOException, InterruptedException {
-        classPool.computeClasses(aggregator.apply(currentClosure));
-        final boolean valid = classPool.writeClasses(this.hierarchy, aggregator.apply(currentClosure), false);
-        hierarchy.clearComputedDesc();
-        if (!valid) {
-            return false;
+    /**
+     * Gallop down from the top of the sorted space, dropping 1, 2, 4... more elements while the predicate holds:
+     * the kept elements tend to cluster, so the next necessary element is often right below the previous one,
+     * found in about log(distance) runs instead of log(size). The whole sorted space with the progressions is
+     * the closure which passed at the previous progression, it isn't tested again.
+     * @return the interval [l, r) holding the first necessary element, the closure up to r passing,
+     * or null if the progressions alone preserve the predicate
+     */
+    private int[] runGallop(final ClassPool classPool, final Predicate predicate)
+            throws IOException, InterruptedException {
+        int r = sortedSpace.size() - 1;
+        int step = 1;
+        while (!overBudget()) {
+            // -1: the progressions alone
+            final int mid = Math.max(r - step, -1);
+            final SortedSet<T> currentClosure = new TreeSet<>(progressions);
+            currentClosure.addAll(sortedSpace.subList(0, mid + 1));
+            if (GlobalConfig.debug)
+                GlobalConfig.println("\tGalloping closure: " + Arrays.toString(new int[]{mid + 1, r}));
+            if (!runPredicate(currentClosure, classPool, predicate)) {
+                return new int[]{mid + 1, r};
+            }
+            if (mid == -1) {
+                return null;
+            }
+            r = mid;
+            step *= 2;
         }
+        return new int[]{0, r};
+    }
 
-        if (predicate.runPredicate()) {
-            lastValidAttempt = currentClosure;
-            return true;
-        } else {
-            return false;
+    // The weight of the reduction points of an element, 1 when replaying a journal
+    private long weight(final T element) {
+        if (hierarchy == null) {
+            return 1;
         }
+        return weights.computeIfAbsent(element, (e) -> {
+            long weight = 0;
+            for (final int rp: aggregator.apply(new TreeSet<>(Collections.singleton(e)))) {
+                weight += hierarchy.getReductionPoint(rp).weight;
+            }
+            return Math.max(weight, 1);
+        });
     }
 
-    public boolean runFinal(final ClassPool classPool, final Predicate predicate) throws IOException, InterruptedException {
-        classPool.computeClasses(aggregator.apply(progressions));
-        final boolean valid = classPool.writeClasses(this.hierarchy, aggregator.apply(progressions), false);
-        hierarchy.clearComputedDesc();
-        if (!valid) {
-            return false;
+    /**
+     * The split point of [l, r) leaving `num/den` of the interval in the closure: with the weights, the first
+     * element at which the cumulative weight reaches that fraction, so each predicate run decides about the same
+     * amount of bytecode whatever the number of reduction points it stands for.
+     * @return mid in [l, r), the closure takes the elements up to mid included
+     */
+    private int split(final int l, final int r, final int num, final int den) {
+        if (!weighted) {
+            return num * 2 == den ? l + (r - l) / 2 : l + ((r - l) * num - 1) / den;
         }
+        final long target = cumulativeWeights[l] + (cumulativeWeights[r] - cumulativeWeights[l]) * num / den;
+        // smallest mid with cumulativeWeights[mid + 1] >= target
+        int low = l, high = r - 1;
+        while (low < high) {
+            final int mid = low + (high - low) / 2;
+            if (cumulativeWeights[mid + 1] >= target) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
 
-        if (predicate.runPredicate()) {
-            return true;
-        } else if (lastValidAttempt != null) {
-            progressions = lastValidAttempt;
+    // an approximate on stepping out nearby elements
+    private boolean stepOut(final int l, final int r) {
+        final boolean hurried = budget != null && budget.isLow();
+        if ((retryCounter >= STEP_OUT_AFTER || hurried) && r == sortedSpace.size()
+                && r - l < sortedSpace.size() / (hurried ? LOW_BUDGET_STEP_OUT_FRACTION : STEP_OUT_FRACTION)) {
+            for (int i = l; i < r; ++i) {
+                progressions.add(sortedSpace.get(i));
+            }
             return true;
-        } else {
-            return false;
+        }
+        return false;
+    }
+
+    // A candidate written in a workspace, ready for its predicate
+    private final class Candidate {
+        final int mid;
+        final SortedSet<T> closure;
+        final Workspace workspace;
+        final boolean valid;
+        final String digest;
+
+        Candidate(final int mid, final Workspace workspace, final ClassPool classPool) throws IOException {
+            this.mid = mid;
+            this.closure = new TreeSet<>(progressions);
+            this.closure.addAll(sortedSpace.subList(0, mid + 1));
+            this.workspace = workspace;
+            this.valid = writeCandidate(closure, classPool, workspace.targetPath);
+            this.digest = valid && !replaying() ? classPool.getLastDigest() : null;
+        }
+    }
+
+    /**
+     * The sequential binary search of [l, r), with the transformation off the critical path:
+     * while the predicate tests a candidate, the next candidates of both outcomes are written
+     * in the two other workspaces, and the outcome picks the one to test next.
+     * @return the interval left once the search ends, or steps out
+     */
+    private int[] runPipelined(int l, int r, final ClassPool classPool) throws IOException, InterruptedException {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final Deque<Workspace> free = new ArrayDeque<>(workspaces.subList(0, PIPELINE_WORKSPACES));
+        Candidate current = r > l ? new Candidate(split(l, r, 1, 2), free.poll(), classPool) : null;
+        Future<Boolean> result = null;
+        try {
+            while (r > l) {
+                final int mid = current.mid;
+                if (GlobalConfig.debug)
+                    GlobalConfig.println("\tCurrent closure: " + Arrays.toString(new int[]{l, mid + 1, r}));
+                if (current.valid) {
+                    final Candidate tested = current;
+                    result = executor.submit(GlobalConfig.withOutput(
+                            () -> testCandidate(tested.workspace.predicate, tested.closure, tested.digest)));
+                }
+
+                // the classes are transformed on this thread while the predicate runs
+                final Candidate pass = mid > l
+                        ? new Candidate(split(l, mid, 1, 2), free.poll(), classPool) : null;
+                final Candidate fail = r > mid + 1
+                        ? new Candidate(split(mid + 1, r, 1, 2), free.poll(), classPool) : null;
+
+                final boolean outcome = result != null && result.get();
+                result = null;
+                free.add(current.workspace);
+                final Candidate discarded;
+                if (outcome) {
+                    passed(current.closure, classPool, current.workspace.targetPath);
+                    r = mid;
+                    current = pass;
+                    discarded = fail;
+                } else {
+                    l = mid + 1;
+                    current = fail;
+                    discarded = pass;
+                }
+                if (discarded != null) {
+                    free.add(discarded.workspace);
+                }
+
+                if (stepOut(l, r) || overBudget()) {
+                    break;
+                }
+            }
+            return new int[]{l, r};
+        } catch (final ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            } else if (ex.getCause() instanceof InterruptedException) {
+                throw (InterruptedException) ex.getCause();
+            }
+            throw new IllegalStateException(ex.getCause());
+        } finally {
+            if (result != null && !result.isDone()) {
+                current.workspace.predicate.cancel();
+            }
+            awaitCancelled(executor, workspaces.subList(0, PIPELINE_WORKSPACES));
         }
     }
 
-    public SortedSet<T> getProgressions() {
-        return progressions;
+    // k-ary search step: test k split points of [l, r) at once and narrow the interval k + 1 ways
+    private int[] runSplits(final int l, final int r, final ClassPool classPool)
+            throws IOException, InterruptedException {
+        final int k = Math.min(workspaces.size(), r - l);
+        final int[] mids = new int[k];
+        final List<SortedSet<T>> closures = new ArrayList<>();
+        final List<Future<Boolean>> results = new ArrayList<>();
+
+        // the transformation shares the analyzer states, only the predicates run concurrently
+        for (int i = 0; i < k; ++i) {
+            mids[i] = split(l, r, i + 1, k + 1);
+            if (weighted) {
+                // distinct split points, even if an element outweighs a whole fraction of the interval
+                mids[i] = Math.min(Math.max(mids[i], i == 0 ? l : mids[i - 1] + 1), r - k + i);
+            }
+            final SortedSet<T> currentClosure = new TreeSet<>(progressions);
+            currentClosure.addAll(sortedSpace.subList(0, mids[i] + 1));
+            closures.add(currentClosure);
+        }
+        if (GlobalConfig.debug)
+            GlobalConfig.println("\tCurrent closures: " + l + " " + Arrays.toString(mids) + " " + r);
+
+        // set once the outcome of this step is known, the split points still running are cancelled
+        final AtomicBoolean decided = new AtomicBoolean(false);
+        final ExecutorService pool = Executors.newFixedThreadPool(k);
+        try {
+            for (int i = 0; i < k; ++i) {
+                final Workspace workspace = workspaces.get(i);
+                if (writeCandidate(closures.get(i), classPool, workspace.targetPath)) {
+                    final SortedSet<T> closure = closures.get(i);
+                    final String digest = classPool.getLastDigest();
+                    results.add(pool.submit(GlobalConfig.withOutput(() -> {
+                        if (decided.get()) {
+                            throw new CancellationException();
+                        }
+                        return testCandidate(workspace.predicate, closure, digest);
+                    })));
+                } else {
+                    results.add(null);
+                }
+            }
+
+            // the first passing split point bounds the interval from above, the one before it from below
+            int low = l;
+            for (int i = 0; i < k; ++i) {
+                if (results.get(i) != null && results.get(i).get()) {
+                    passed(closures.get(i), classPool, workspaces.get(i).targetPath);
+                    return new int[]{low, mids[i]};
+                }
+                low = mids[i] + 1;
+            }
+            return new int[]{low, r};
+        } catch (final ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            } else if (ex.getCause() instanceof InterruptedException) {
+                throw (InterruptedException) ex.getCause();
+            }
+            throw new IllegalStateException(ex.getCause());
+        } finally {
+            decided.set(true);
+            for (int i = 0; i < results.size(); ++i) {
+                final Future<Boolean> result = results.get(i);
+                if (result != null && !result.isDone()) {
+                    result.cancel(false);
+                    workspaces.get(i).predicate.cancel();
+                }
+            }
+            awaitCancelled(pool, workspaces.subList(0, k));
+        }
+    }
+
+    // A workspace is only written again once its predicate stopped, its next runs are not cancelled then
+    private static void awaitCancelled(final ExecutorService executor, final List<Workspace> used)
+            throws IOException, InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(CANCEL_GRACE, TimeUnit.MILLISECONDS)) {
+            throw new IOException("Cancelled predicates still running after " + CANCEL_GRACE + "ms");
+        }
+        for (final Workspace workspace: used) {
+            workspace.predicate.clearCancel();
+        }
     }
 }
@@ -0,0 +1,140 @@
+package reduction;
+
+import graph.Hierarchy;
+import helper.GlobalConfig;
+import jvm.ClassPool;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * The binary search over the subsets closed under the implications of the reduction points (see
+ * Hierarchy.implications). A closure is completed before it is tested, which does not change the written classes;
+ * closures completed to an already tested one are not tested again. The elements are searched implied first,
+ * so that most prefixes are closed already.
+ * The candidates are tested one at a time, the workspaces are not used.
+ */
+public class ClosurePolicy<T extends Comparable<? super T>> extends BinaryPolicy<T> {
+    // element => the elements kept with it
+    private final Map<T, Set<T>> implications;
+    private final Map<BitSet, Boolean> outcomes;
+
+    public ClosurePolicy(final Hierarchy hierarchy, final List<T> sortedSpace,
+                         final Function<SortedSet<T>, SortedSet<Integer>> aggregator) {
+        this(hierarchy, sortedSpace, aggregator, implications(hierarchy, sortedSpace, aggregator));
+    }
+
+    private ClosurePolicy(final Hierarchy hierarchy, final List<T> sortedSpace,
+                          final Function<SortedSet<T>, SortedSet<Integer>> aggregator,
+                          final Map<T, Set<T>> implications) {
+        super(hierarchy, sortedSpace, searchOrder(sortedSpace, implications), aggregator);
+        this.implications = implications;
+        this.outcomes = new HashMap<>();
+        if (GlobalConfig.debug)
+            GlobalConfig.println("\t" + implications.size() + "/" + sortedSpace.size() + " elements imply others");
+    }
+
+    // The implications of the reduction points, between the elements holding them
+    static <T extends Comparable<? super T>> Map<T, Set<T>> implications(
+            final Hierarchy hierarchy, final List<T> sortedSpace,
+            final Function<SortedSet<T>, SortedSet<Integer>> aggregator) {
+        final Map<T, Set<T>> implications = new HashMap<>();
+        if (hierarchy == null || hierarchy.implications.isEmpty()) {
+            return implications;
+        }
+        final Map<Integer, T> owners = new HashMap<>();
+        final Map<T, SortedSet<Integer>> rps = new HashMap<>();
+        for (final T element: sortedSpace) {
+            rps.put(element, aggregator.apply(new TreeSet<>(Collections.singleton(element))));
+            for (final int rp: rps.get(element)) {
+                owners.put(rp, element);
+            }
+        }
+        for (final T element: sortedSpace) {
+            for (final int rp: hierarchy.implicationClosure(rps.get(element))) {
+                final T owner = owners.get(rp);
+                if (owner != null && !owner.equals(element)) {
+                    implications.computeIfAbsent(element, x -> new HashSet<>()).add(owner);
+                }
+            }
+        }
+        return implications;
+    }
+
+    // The sorted space with the implied elements moved before the elements implying them
+    static <T> List<T> searchOrder(final List<T> sortedSpace, final Map<T, Set<T>> implications) {
+        final List<T> order = new ArrayList<>();
+        final Set<T> visited = new HashSet<>();
+        for (final T element: sortedSpace) {
+            visit(element, implications, visited, order);
+        }
+        return order;
+    }
+
+    private static <T> void visit(final T element, final Map<T, Set<T>> implications,
+                                  final Set<T> visited, final List<T> order) {
+        final Deque<Iterator<T>> stack = new ArrayDeque<>();
+        final Deque<T> path = new ArrayDeque<>();
+        if (!visited.add(element)) {
+            return;
+        }
+        stack.push(implications.getOrDefault(element, Collections.emptySet()).iterator());
+        path.push(element);
+        while (!stack.isEmpty()) {
+            if (stack.peek().hasNext()) {
+                final T next = stack.peek().next();
+                if (visited.add(next)) {
+                    stack.push(implications.getOrDefault(next, Collections.emptySet()).iterator());
+                    path.push(next);
+                }
+            } else {
+                stack.pop();
+                order.add(path.pop());
+            }
+        }
+    }
+
+    SortedSet<T> close(final SortedSet<T> closure) {
+        final SortedSet<T> result = new TreeSet<>(closure);
+        final Deque<T> queue = new ArrayDeque<>(closure);
+        while (!queue.isEmpty()) {
+            for (final T implied: implications.getOrDefault(queue.poll(), Collections.emptySet())) {
+                if (result.add(implied)) {
+                    queue.add(implied);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void setWorkspaces(final List<Workspace> workspaces) {
+    }
+
+    @Override
+    public void setPipelined(final List<Workspace> workspaces) {
+    }
+
+    @Override
+    public boolean runPredicate(final SortedSet<T> currentClosure,
+                                final ClassPool classPool,
+                                final Predicate predicate) throws IOException, InterruptedException {
+        final SortedSet<T> closed = close(currentClosure);
+        final BitSet key = positions(closed);
+        Boolean outcome = outcomes.get(key);
+        if (outcome == null) {
+            outcome = super.runPredicate(closed, classPool, predicate);
+            outcomes.put(key, outcome);
+        } else if (outcome) {
+            lastValidAttempt = closed;
+        }
+        return outcome;
+    }
+
+    @Override
+    public boolean runFinal(final ClassPool classPool, final Predicate predicate) throws IOException, InterruptedException {
+        progressions = close(progressions);
+        return super.runFinal(classPool, predicate);
+    }
+}
@@ -0,0 +1,323 @@
+package reduction;
+
+import graph.Hierarchy;
+import helper.GlobalConfig;
+import jvm.ClassPool;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+/**
+ * Reduces the unconnected components of the classes (no supertype, member, code or signature of a component refers
+ * to another one) separately, each with the strategy `strategy` while the others are kept at their best so far.
+ * With workspaces the components are reduced concurrently, one per workspace. The results are merged and checked
+ * by a last predicate run, and if the merge fails the components are added one by one.
+ */
+public class ComponentPolicy implements ReductionStrategy<Integer> {
+    /**
+     * Tests the merged closures through the cache, the journal & the budget, as the searches do
+     */
+    private static class MergePolicy extends AbstractPolicy<Integer> {
+        MergePolicy(final Hierarchy hierarchy, final List<Integer> elements) {
+            super(hierarchy, elements, BinaryPolicy.ID_AGGREGATOR);
+        }
+
+        @Override
+        public void runReduction(final ClassPool classPool, final Predicate predicate) {
+            throw new UnsupportedOperationException("The merge only confirms closures");
+        }
+    }
+
+    private final String strategy;
+    private final Hierarchy hierarchy;
+    private final List<Integer> elements;
+    private final List<List<Integer>> components;
+    // component => its kept elements, all of them until it is reduced
+    private final Map<Integer, SortedSet<Integer>> kept;
+
+    private PredicateCache cache;
+    private PredicateJournal journal;
+    private ReductionBudget budget;
+    private List<Workspace> workspaces;
+    private boolean pipelined;
+    private boolean weighted;
+    private boolean galloping;
+
+    private SortedSet<Integer> progressions;
+
+    public ComponentPolicy(final String strategy, final Hierarchy hierarchy, final List<Integer> elements,
+                           final List<List<Integer>> components) {
+        this.strategy = strategy;
+        this.hierarchy = hierarchy;
+        this.elements = new ArrayList<>(elements);
+        this.components = components;
+        this.kept = new ConcurrentHashMap<>();
+        for (int i = 0; i < components.size(); ++i) {
+            kept.put(i, new TreeSet<>(components.get(i)));
+        }
+        this.cache = null;
+        this.journal = null;
+        this.budget = null;
+        this.workspaces = Collections.emptyList();
+        this.pipelined = false;
+        this.weighted = false;
+        this.galloping = false;
+        this.progressions = new TreeSet<>(elements);
+    }
+
+    /**
+     * @param blocks the reduction points of each class, see ClassPool.getReductionBlocks
+     * @param references the classes each class refers to, see ClassPool.getClassReferences
+     * @return `elements` split by the unconnected components of their classes, in the order of `elements`;
+     * the elements which belong to no class are one more component
+     */
+    public static List<List<Integer>> partition(final Hierarchy hierarchy, final List<Integer> elements,
+                                                final List<ReductionBlock> blocks,
+                                                final Map<String, Set<String>> references) {
+        final Map<String, String> parents = new HashMap<>();
+        for (final Map.Entry<String, Set<String>> entry: references.entrySet()) {
+            union(parents, topLevel(entry.getKey()), topLevel(entry.getKey()));
+            for (final String reference: entry.getValue()) {
+                // the lib classes connect nothing, they are never reduced
+                if (references.containsKey(reference)) {
+                    union(parents, topLevel(entry.getKey()), topLevel(reference));
+                }
+            }
+        }
+
+        final Map<Integer, String> classes = new HashMap<>();
+        for (final ReductionBlock block: blocks) {
+            for (final int rp: block.reductionPoints) {
+                classes.put(rp, block.name);
+            }
+        }
+        // a reduction point implying another one ties their classes together
+        for (final Map.Entry<Integer, Set<Integer>> entry: hierarchy.implications.entrySet()) {
+            for (final int implied: entry.getValue()) {
+                if (classes.containsKey(entry.getKey()) && classes.containsKey(implied)) {
+                    union(parents, topLevel(classes.get(entry.getKey())), topLevel(classes.get(implied)));
+                }
+            }
+        }
+
+        final Map<String, List<Integer>> byRoot = new LinkedHashMap<>();
+        for (final int element: elements) {
+            final String cls = classes.get(element);
+            final String root = cls == null ? "" : find(parents, topLevel(cls));
+            byRoot.computeIfAbsent(root, (x) -> new ArrayList<>()).add(element);
+        }
+        final List<List<Integer>> result = new ArrayList<>(byRoot.values());
+        if (GlobalConfig.debug)
+            GlobalConfig.println("\t" + result.size() + " components of " + elements.size() + " elements");
+        return result;
+    }
+
+    // The inner classes are decompiled with their outer class
+    private static String topLevel(final String className) {
+        final int inner = className.indexOf('$');
+        return inner == -1 ? className : className.substring(0, inner);
+    }
+
+    private static String find(final Map<String, String> parents, final String cls) {
+        String root = cls;
+        while (parents.containsKey(root) && !parents.get(root).equals(root)) {
+            root = parents.get(root);
+        }
+        // path compression
+        String current = cls;
+        while (!current.equals(root)) {
+            final String next = parents.get(current);
+            parents.put(current, root);
+            current = next;
+        }
+        return root;
+    }
+
+    private static void union(final Map<String, String> parents, final String a, final String b) {
+        parents.putIfAbsent(a, a);
+        parents.putIfAbsent(b, b);
+        final String rootA = find(parents, a);
+        final String rootB = find(parents, b);
+        if (!rootA.equals(rootB)) {
+            parents.put(rootB, rootA);
+        }
+    }
+
+    @Override
+    public void setCache(final PredicateCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public void setBudget(final ReductionBudget budget) {
+        this.budget = budget;
+    }
+
+    // A journal session numbers the elements of a single search: each component is a session, and so is the merge
+    @Override
+    public void setJournal(final PredicateJournal journal) {
+        this.journal = journal;
+    }
+
+    // The components are reduced concurrently, one per workspace
+    @Override
+    public void setWorkspaces(final List<Workspace> workspaces) {
+        this.workspaces = workspaces;
+        this.pipelined = false;
+    }
+
+    // The components are reduced one after the other, each pipelined on the workspaces
+    @Override
+    public void setPipelined(final List<Workspace> workspaces) {
+        this.workspaces = workspaces;
+        this.pipelined = true;
+    }
+
+    @Override
+    public void setWeighted(final boolean weighted) {
+        this.weighted = weighted;
+    }
+
+    @Override
+    public void setGalloping(final boolean galloping) {
+        this.galloping = galloping;
+    }
+
+    // The closure of a component, the other components being kept as they are now
+    private Function<SortedSet<Integer>, SortedSet<Integer>> aggregator(final int component) {
+        return (closure) -> {
+            final SortedSet<Integer> result = new TreeSet<>(closure);
+            for (final Map.Entry<Integer, SortedSet<Integer>> entry: kept.entrySet()) {
+                if (entry.getKey() != component) {
+                    result.addAll(entry.getValue());
+                }
+            }
+            return result;
+        };
+    }
+
+    private void reduceComponent(final int component, final ClassPool classPool, final Predicate predicate,
+                                 final List<Workspace> pipeline) throws IOException, InterruptedException {
+        final ReductionStrategy<Integer> policy = ReductionStrategy.create(strategy, hierarchy,
+                components.get(component), aggregator(component));
+        policy.setPipelined(pipeline);
+        policy.setCache(cache);
+        final PredicateJournal session = journal == null ? null
+                : journal.concurrentSession(components.get(component).size());
+        policy.setJournal(session);
+        policy.setBudget(budget);
+        policy.setWeighted(weighted);
+        policy.setGalloping(galloping);
+        final boolean isValid;
+        try {
+            policy.runReduction(classPool, predicate);
+            isValid = policy.runFinal(classPool, predicate);
+        } finally {
+            if (session != null) {
+                session.flush();
+            }
+        }
+        if (isValid) {
+            kept.put(component, new TreeSet<>(policy.getProgressions()));
+        }
+        if (GlobalConfig.debug)
+            GlobalConfig.println("Component " + component + " => (" + isValid + ") "
+                    + kept.get(component).size() + "/" + components.get(component).size());
+    }
+
+    @Override
+    public void runReduction(final ClassPool classPool, final Predicate predicate)
+            throws IOException, InterruptedException {
+        if (pipelined || workspaces.size() < 2 || components.size() < 2) {
+            for (int i = 0; i < components.size(); ++i) {
+                reduceComponent(i, classPool, predicate, pipelined ? workspaces : Collections.emptyList());
+            }
+        } else {
+            final BlockingQueue<Workspace> free = new LinkedBlockingQueue<>(workspaces);
+            final ExecutorService executor = Executors.newFixedThreadPool(workspaces.size());
+            try {
+                final List<Future<Void>> futures = new ArrayList<>();
+                for (int i = 0; i < components.size(); ++i) {
+                    final int component = i;
+                    futures.add(executor.submit(GlobalConfig.withOutput(() -> {
+                        final Workspace workspace = free.take();
+                        try {
+                            reduceComponent(component, classPool.fork(workspace.targetPath), workspace.predicate,
+                                    Collections.emptyList());
+                        } finally {
+                            free.add(workspace);
+                        }
+                        return null;
+                    })));
+                }
+                for (final Future<Void> future: futures) {
+                    try {
+                        future.get();
+                    } catch (final ExecutionException ex) {
+                        if (ex.getCause() instanceof IOException) {
+                            throw (IOException) ex.getCause();
+                        } else if (ex.getCause() instanceof InterruptedException) {
+                            throw (InterruptedException) ex.getCause();
+                        }
+                        throw new IllegalStateException(ex.getCause());
+                    }
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+        progressions = new TreeSet<>();
+        for (final SortedSet<Integer> elements: kept.values()) {
+            progressions.addAll(elements);
+        }
+    }
+
+    @Override
+    public boolean runFinal(final ClassPool classPool, final Predicate predicate)
+            throws IOException, InterruptedException {
+        final MergePolicy merge = new MergePolicy(hierarchy, elements);
+        merge.setCache(cache);
+        merge.setJournal(journal == null ? null : journal.session(elements.size()));
+        merge.setBudget(budget);
+        if (merge.runPredicate(progressions, classPool, predicate)) {
+            return true;
+        }
+        // the components interact through the predicate after all: add the reduced ones while they pass
+        if (GlobalConfig.debug)
+            GlobalConfig.println("Merged components fail, adding them one by one");
+        SortedSet<Integer> current = new TreeSet<>();
+        for (final List<Integer> component: components) {
+            current.addAll(component);
+        }
+        boolean isValid = false;
+        boolean written = false;
+        for (int i = 0; i < components.size() && (budget == null || !budget.isExhausted()); ++i) {
+            final SortedSet<Integer> candidate = new TreeSet<>(current);
+            candidate.removeAll(components.get(i));
+            candidate.addAll(kept.get(i));
+            written = merge.runPredicate(candidate, classPool, predicate);
+            if (written) {
+                current = candidate;
+                isValid = true;
+            }
+        }
+        if (!isValid) {
+            isValid = merge.runPredicate(current, classPool, predicate);
+        } else if (!written) {
+            synchronized (hierarchy) {
+                classPool.computeClasses(current);
+                classPool.writeClasses(hierarchy, current, false);
+                hierarchy.clearComputedDesc();
+            }
+        }
+        progressions = current;
+        return isValid;
+    }
+
+    @Override
+    public SortedSet<Integer> getProgressions() {
+        return progressions;
+    }
+}
@@ -0,0 +1,102 @@
+package reduction;
+
+import graph.Hierarchy;
+import helper.GlobalConfig;
+import jvm.ClassPool;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Zeller's ddmin: tests chunks of the remaining elements and their complements, so that many elements
+ * can go with a single predicate run. The result is 1-minimal, no single element of it can be removed.
+ */
+public class DDMinPolicy<T extends Comparable<? super T>> extends AbstractPolicy<T> {
+    // ddmin tests some closures again once the granularity changes
+    private final Map<BitSet, Boolean> outcomes;
+    private int runs;
+
+    public DDMinPolicy(final Hierarchy hierarchy, final List<T> sortedSpace,
+                       final Function<SortedSet<T>, SortedSet<Integer>> aggregator) {
+        super(hierarchy, sortedSpace, aggregator);
+        this.outcomes = new HashMap<>();
+        this.runs = 0;
+    }
+
+    @Override
+    public void runReduction(final ClassPool classPool,
+                             final Predicate predicate) throws IOException, InterruptedException {
+        List<T> current = new ArrayList<>(initialSpace);
+        // if discard all elements and we still preserve the compiler error, just return
+        if (test(Collections.emptyList(), classPool, predicate)) {
+            progressions = new TreeSet<>();
+            return;
+        }
+
+        int n = 2;
+        // each configuration passes, an exhausted budget keeps the current one
+        while (current.size() >= 2 && !overBudget()) {
+            if (GlobalConfig.debug)
+                GlobalConfig.println("\tCurrent configuration: " + current.size() + " elements, granularity " + n);
+            final List<List<T>> chunks = split(current, n);
+            List<T> reduced = null;
+            for (final List<T> chunk: chunks) {
+                if (test(chunk, classPool, predicate)) {
+                    reduced = chunk;
+                    n = 2;
+                    break;
+                }
+            }
+            // with two chunks, the complements are the chunks themselves
+            if (reduced == null && n > 2) {
+                for (final List<T> chunk: chunks) {
+                    final List<T> complement = new ArrayList<>(current);
+                    complement.removeAll(chunk);
+                    if (test(complement, classPool, predicate)) {
+                        reduced = complement;
+                        n = Math.max(n - 1, 2);
+                        break;
+                    }
+                }
+            }
+            if (reduced != null) {
+                current = reduced;
+            } else if (n < current.size()) {
+                n = Math.min(2 * n, current.size());
+            } else {
+                break;
+            }
+        }
+        progressions = new TreeSet<>(current);
+        if (GlobalConfig.debug)
+            GlobalConfig.println("\tddmin kept " + current.size() + "/" + initialSpace.size()
+                    + " elements with " + runs + " predicate runs");
+    }
+
+    // `elements` in n chunks of (nearly) equal sizes
+    static <T> List<List<T>> split(final List<T> elements, final int n) {
+        final List<List<T>> chunks = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < n; ++i) {
+            final int end = start + (elements.size() - start) / (n - i);
+            chunks.add(new ArrayList<>(elements.subList(start, end)));
+            start = end;
+        }
+        return chunks;
+    }
+
+    private boolean test(final List<T> elements, final ClassPool classPool,
+                         final Predicate predicate) throws IOException, InterruptedException {
+        final SortedSet<T> closure = new TreeSet<>(elements);
+        final BitSet key = positions(closure);
+        final Boolean known = outcomes.get(key);
+        if (known != null) {
+            return known;
+        }
+        runs += 1;
+        final boolean outcome = runPredicate(closure, classPool, predicate);
+        outcomes.put(key, outcome);
+        return outcome;
+    }
+}
@@ -0,0 +1,633 @@
+package reduction;
+
+import helper.GlobalConfig;
+import helper.HashUtils;
+import org.apache.commons.io.FileUtils;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.commons.ClassRemapper;
+import org.objectweb.asm.commons.Remapper;
+
+import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.MessageDigest;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+import static org.objectweb.asm.Opcodes.ASM9;
+
+/**
+ * Decompiles in-memory class bytes with a decompiler jar loaded once into an isolated class loader,
+ * replacing the `find` + `jar` + `java -jar` part of the predicate scripts.
+ * The decompilers are driven by reflection, since their jars are only known at runtime.
+ */
+public abstract class DecompilerStage {
+    static final int SOURCE_CACHE_SIZE = 1 << 14;
+
+    /**
+     * Throws to stop the decompilation, e.g. once the predicate run is cancelled or out of time
+     */
+    public interface Interruption {
+        void check() throws IOException;
+    }
+
+    public final String decompiler;
+    protected final ClassLoader loader;
+
+    // re-decompile only the class groups which changed, see runIncremental
+    private boolean incremental = false;
+    // hash of the group, see groupHashes => decompiled sources of the group, least recently used first
+    private final Map<String, Map<String, String>> sourceCache =
+            new LinkedHashMap<String, Map<String, String>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String, Map<String, String>> eldest) {
+                    return size() > SOURCE_CACHE_SIZE;
+                }
+            };
+    // top-level class => hash of the group whose sources are in src/, and these sources
+    private final Map<String, String> onDisk = new HashMap<>();
+    private final Map<String, List<String>> onDiskFiles = new HashMap<>();
+    // of the run in progress, checked before each class the decompiler reads or writes
+    private Interruption interruption = () -> {};
+
+    protected DecompilerStage(final String decompiler, final Path jar) throws IOException {
+        this.decompiler = decompiler;
+        if (!Files.isRegularFile(jar)) {
+            throw new FileNotFoundException("No " + decompiler + " jar at " + jar);
+        }
+        // no parent besides the bootstrap loader, so our own dependencies are invisible to the decompiler
+        this.loader = new URLClassLoader(new URL[]{jar.toUri().toURL()}, null);
+    }
+
+    public void setIncremental(final boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * @param jar the jar of `decompiler`
+     */
+    public static DecompilerStage create(final String decompiler, final Path jar) throws IOException {
+        switch (decompiler) {
+            case "cfr":
+                return new CfrStage(jar);
+            case "fernflower":
+                return new FernflowerStage(jar);
+            case "procyon":
+                return new ProcyonStage(jar);
+            default:
+                throw new IllegalArgumentException("Unknown decompiler: " + decompiler);
+        }
+    }
+
+    /**
+     * Same layout as the predicate scripts: sources are written into `output/src`
+     * @param classes class bytes keyed by their relative path (a/b/C.class)
+     * @return the output folder name, as echoed by the predicate scripts
+     */
+    public String run(final SortedMap<String, byte[]> classes, final Path output,
+                      final Interruption interruption) throws IOException {
+        this.interruption = interruption;
+        try {
+            return run(classes, output);
+        } finally {
+            this.interruption = () -> {};
+        }
+    }
+
+    public String run(final SortedMap<String, byte[]> classes, final Path output) throws IOException {
+        if (incremental) {
+            return runIncremental(classes, output);
+        }
+        FileUtils.deleteDirectory(output.toFile());
+        final Path srcFolder = output.resolve("src");
+        Files.createDirectories(srcFolder);
+        final Map<String, String> sources = decompileAll(classes, topLevelClasses(classes));
+        for (final Map.Entry<String, String> source: sources.entrySet()) {
+            writeSource(srcFolder, source.getKey(), source.getValue());
+        }
+        return output.getFileName().toString();
+    }
+
+    /**
+     * Only decompile the class groups (a top-level class & its inner classes) whose hash changed since
+     * they were last decompiled, and leave the sources of the other groups in place.
+     */
+    private String runIncremental(final SortedMap<String, byte[]> classes, final Path output) throws IOException {
+        final Path srcFolder = output.resolve("src");
+        if (!Files.isDirectory(srcFolder)) {
+            onDisk.clear();
+            onDiskFiles.clear();
+        }
+        // everything but the sources is rebuilt, e.g. compile.sh puts its classes on the class path
+        Files.createDirectories(srcFolder);
+        try (final DirectoryStream<Path> entries = Files.newDirectoryStream(output)) {
+            for (final Path entry: entries) {
+                if (!entry.equals(srcFolder)) {
+                    FileUtils.forceDelete(entry.toFile());
+                }
+            }
+        }
+
+        final SortedMap<String, List<String>> groups = classGroups(classes);
+        final Map<String, String> hashes = groupHashes(classes, groups);
+        // sources of the groups which are not in src/ yet
+        final Map<String, Map<String, String>> pending = new HashMap<>();
+        final List<String> dirty = new ArrayList<>();
+        for (final Map.Entry<String, List<String>> group: groups.entrySet()) {
+            final String hash = hashes.get(group.getKey());
+            if (hash.equals(onDisk.get(group.getKey()))) {
+                continue;
+            }
+            final Map<String, String> cached = sourceCache.get(hash);
+            if (cached != null) {
+                pending.put(group.getKey(), cached);
+            } else {
+                pending.put(group.getKey(), new HashMap<>());
+                dirty.add(group.getKey());
+            }
+        }
+
+        if (!dirty.isEmpty()) {
+            for (final Map.Entry<String, String> source: decompileAll(classes, dirty).entrySet()) {
+                final String group = groupOfSource(source.getKey());
+                if (dirty.contains(group)) {
+                    pending.get(group).put(source.getKey(), source.getValue());
+                } else if (GlobalConfig.debugPredicate) {
+                    GlobalConfig.println("Unattributed decompiled source: " + source.getKey());
+                }
+            }
+            for (final String group: dirty) {
+                sourceCache.put(hashes.get(group), pending.get(group));
+            }
+        }
+        if (GlobalConfig.debugPredicate)
+            GlobalConfig.println("Decompiled " + dirty.size() + "/" + groups.size() + " class groups");
+
+        // bring src/ in line with the current groups
+        for (final String group: new ArrayList<>(onDisk.keySet())) {
+            if (!hashes.containsKey(group) || pending.containsKey(group)) {
+                for (final String file: onDiskFiles.remove(group)) {
+                    Files.deleteIfExists(srcFolder.resolve(file));
+                }
+                onDisk.remove(group);
+            }
+        }
+        for (final Map.Entry<String, Map<String, String>> group: pending.entrySet()) {
+            for (final Map.Entry<String, String> source: group.getValue().entrySet()) {
+                writeSource(srcFolder, source.getKey(), source.getValue());
+            }
+            onDisk.put(group.getKey(), hashes.get(group.getKey()));
+            onDiskFiles.put(group.getKey(), new ArrayList<>(group.getValue().keySet()));
+        }
+        return output.getFileName().toString();
+    }
+
+    /**
+     * @param toDecompile the top-level classes to decompile, their inner classes included
+     * @param sources receives the decompiled sources keyed by their relative path (a/b/C.java)
+     */
+    protected abstract void decompile(SortedMap<String, byte[]> classes, List<String> toDecompile,
+                                      Map<String, String> sources)
+            throws IOException, ReflectiveOperationException;
+
+    private Map<String, String> decompileAll(final SortedMap<String, byte[]> classes, final List<String> toDecompile)
+            throws IOException {
+        final Map<String, String> sources = new HashMap<>();
+        try {
+            decompile(classes, toDecompile, sources);
+        } catch (final ReflectiveOperationException | UndeclaredThrowableException ex) {
+            // the decompiler may fail on the interruption thrown by one of our callbacks
+            interruption.check();
+            throw new IOException("Decompiler " + decompiler + " failed", ex);
+        }
+        // or swallow it, and go on with the next class
+        interruption.check();
+        return sources;
+    }
+
+    protected void checkInterruption() throws IOException {
+        interruption.check();
+    }
+
+    // The top-level class, which an inner class is decompiled with
+    static String outerClass(final SortedMap<String, byte[]> classes, final String path) {
+        final int inner = path.indexOf('$', path.lastIndexOf('/') + 1);
+        if (inner == -1 || !classes.containsKey(path.substring(0, inner) + ".class")) {
+            return path;
+        }
+        return path.substring(0, inner) + ".class";
+    }
+
+    public static List<String> topLevelClasses(final SortedMap<String, byte[]> classes) {
+        final List<String> topLevel = new ArrayList<>();
+        for (final String path: classes.keySet()) {
+            if (outerClass(classes, path).equals(path)) {
+                topLevel.add(path);
+            }
+        }
+        return topLevel;
+    }
+
+    // top-level class => the classes decompiled along with it, itself included
+    static SortedMap<String, List<String>> classGroups(final SortedMap<String, byte[]> classes) {
+        final SortedMap<String, List<String>> groups = new TreeMap<>();
+        for (final String path: classes.keySet()) {
+            groups.computeIfAbsent(outerClass(classes, path), (k) -> new ArrayList<>()).add(path);
+        }
+        return groups;
+    }
+
+    /**
+     * The hash of each group: the bytes of its classes, and the declarations of the other classes they refer to
+     * and of their supertypes. The decompilers resolve the casts, overloads and inherited members of a group
+     * against these declarations, but never read the code of the other groups.
+     */
+    static Map<String, String> groupHashes(final SortedMap<String, byte[]> classes,
+                                           final SortedMap<String, List<String>> groups) {
+        final Map<String, String> declarations = new HashMap<>();
+        final Map<String, String> hashes = new HashMap<>();
+        for (final Map.Entry<String, List<String>> group: groups.entrySet()) {
+            final MessageDigest digest = HashUtils.newDigest();
+            final SortedSet<String> dependencies = new TreeSet<>();
+            for (final String member: group.getValue()) {
+                digest.update(member.getBytes(StandardCharsets.UTF_8));
+                digest.update(classes.get(member));
+                addDependencies(classes, referencedClasses(classes.get(member)), dependencies);
+            }
+            dependencies.removeAll(group.getValue());
+            for (final String dependency: dependencies) {
+                digest.update(dependency.getBytes(StandardCharsets.UTF_8));
+                digest.update(declarations.computeIfAbsent(dependency, (k) -> declarationHash(classes.get(k)))
+                        .getBytes(StandardCharsets.UTF_8));
+            }
+            hashes.put(group.getKey(), HashUtils.toHex(digest.digest()));
+        }
+        return hashes;
+    }
+
+    // Add the classes of `classes` among `names` to `dependencies`, with their supertypes
+    private static void addDependencies(final SortedMap<String, byte[]> classes, final Collection<String> names,
+                                        final Set<String> dependencies) {
+        for (final String name: names) {
+            final String path = name + ".class";
+            if (classes.containsKey(path) && dependencies.add(path)) {
+                final ClassReader reader = new ClassReader(classes.get(path));
+                final List<String> supertypes = new ArrayList<>(Arrays.asList(reader.getInterfaces()));
+                if (reader.getSuperName() != null) {
+                    supertypes.add(reader.getSuperName());
+                }
+                addDependencies(classes, supertypes, dependencies);
+            }
+        }
+    }
+
+    // The internal names of the classes used by a class, its code included
+    static Set<String> referencedClasses(final byte[] bytes) {
+        final Set<String> names = new HashSet<>();
+        final Remapper collector = new Remapper() {
+            @Override
+            public String map(final String internalName) {
+                names.add(internalName);
+                return internalName;
+            }
+        };
+        final ClassVisitor visitor = new ClassVisitor(ASM9) {
+            @Override
+            public MethodVisitor visitMethod(final int access, final String name, final String descriptor,
+                                             final String signature, final String[] exceptions) {
+                return new MethodVisitor(ASM9) {};
+            }
+        };
+        new ClassReader(bytes).accept(new ClassRemapper(visitor, collector), ClassReader.SKIP_FRAMES);
+        return names;
+    }
+
+    // The hash of the header, fields & method signatures of a class, without its code
+    static String declarationHash(final byte[] bytes) {
+        final MessageDigest digest = HashUtils.newDigest();
+        final StringBuilder declaration = new StringBuilder();
+        new ClassReader(bytes).accept(new ClassVisitor(ASM9) {
+            @Override
+            public void visit(final int version, final int access, final String name, final String signature,
+                              final String superName, final String[] interfaces) {
+                declaration.append(access).append(' ').append(name).append(' ').append(signature)
+                        .append(' ').append(superName).append(' ').append(Arrays.toString(interfaces)).append('\n');
+            }
+
+            @Override
+            public void visitInnerClass(final String name, final String outerName, final String innerName,
+                                        final int access) {
+                declaration.append("inner ").append(access).append(' ').append(name).append('\n');
+            }
+
+            @Override
+            public FieldVisitor visitField(final int access, final String name, final String descriptor,
+                                           final String signature, final Object value) {
+                declaration.append("field ").append(access).append(' ').append(name).append(' ')
+                        .append(descriptor).append(' ').append(signature).append(' ').append(value).append('\n');
+                return null;
+            }
+
+            @Override
+            public MethodVisitor visitMethod(final int access, final String name, final String descriptor,
+                                             final String signature, final String[] exceptions) {
+                declaration.append("method ").append(access).append(' ').append(name).append(descriptor)
+                        .append(' ').append(signature).append(' ').append(Arrays.toString(exceptions)).append('\n');
+                return null;
+            }
+        }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        return HashUtils.toHex(digest.digest(declaration.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    // Decompilers name the source of a top-level class after it
+    static String groupOfSource(final String source) {
+        return source.substring(0, source.length() - ".java".length()) + ".class";
+    }
+
+    // decompilers report the classes they failed on with a null source
+    protected static void addSource(final Map<String, String> sources, final String relPath, final String content) {
+        if (content != null) {
+            sources.put(relPath, content);
+        }
+    }
+
+    protected static void writeSource(final Path srcFolder, final String relPath, final String content) throws IOException {
+        final Path file = srcFolder.resolve(relPath);
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // JRE classes for the decompilers resolving library types; the application class path stays hidden
+    protected static byte[] systemClass(final String path) throws IOException {
+        final ClassLoader platform = ClassLoader.getSystemClassLoader().getParent();
+        try (final InputStream is = platform.getResourceAsStream(path)) {
+            if (is == null) {
+                return null;
+            }
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            int n;
+            while ((n = is.read(buffer)) != -1) {
+                bytes.write(buffer, 0, n);
+            }
+            return bytes.toByteArray();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    protected <T> T proxy(final Class<T> itf, final java.lang.reflect.InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(loader, new Class<?>[]{itf}, (p, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "hashCode":
+                        return System.identityHashCode(p);
+                    case "equals":
+                        return p == args[0];
+                    default:
+                        return itf.getName() + "@proxy";
+                }
+            }
+            return handler.invoke(p, method, args);
+        });
+    }
+
+    protected static Object invoke(final Method method, final Object target, final Object... args)
+            throws IOException, ReflectiveOperationException {
+        try {
+            return method.invoke(target, args);
+        } catch (final InvocationTargetException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * `java -jar $CFR --caseinsensitivefs true input.jar`, where CFR reads input.jar through our class source
+     */
+    static class CfrStage extends DecompilerStage {
+        static final String INPUT_JAR = "input.jar";
+
+        CfrStage(final Path jar) throws IOException {
+            super("cfr", jar);
+        }
+
+        @Override
+        protected void decompile(final SortedMap<String, byte[]> classes, final List<String> toDecompile,
+                                 final Map<String, String> sources) throws IOException, ReflectiveOperationException {
+            final Class<?> driverCls = loader.loadClass("org.benf.cfr.reader.api.CfrDriver");
+            final Class<?> builderCls = loader.loadClass("org.benf.cfr.reader.api.CfrDriver$Builder");
+            final Class<?> sourceCls = loader.loadClass("org.benf.cfr.reader.api.ClassFileSource");
+            final Class<?> sinkFactoryCls = loader.loadClass("org.benf.cfr.reader.api.OutputSinkFactory");
+            final Class<?> sinkCls = loader.loadClass("org.benf.cfr.reader.api.OutputSinkFactory$Sink");
+            final Class<?> decompiledCls = loader.loadClass("org.benf.cfr.reader.api.SinkReturns$Decompiled");
+            final Method makePair = loader.loadClass("org.benf.cfr.reader.bytecode.analysis.parse.utils.Pair")
+                    .getMethod("make", Object.class, Object.class);
+
+            final Object source = proxy(sourceCls, (p, method, args) -> {
+                switch (method.getName()) {
+                    case "addJar":
+                        return new ArrayList<>(toDecompile);
+                    case "getPossiblyRenamedPath":
+                        return args[0];
+                    case "getClassFileContent": {
+                        checkInterruption();
+                        final String path = (String) args[0];
+                        byte[] bytes = classes.get(path);
+                        if (bytes == null) {
+                            bytes = systemClass(path);
+                        }
+                        if (bytes == null) {
+                            throw new IOException("No such file " + path);
+                        }
+                        return makePair.invoke(null, bytes, path);
+                    }
+                    default:
+                        return null;
+                }
+            });
+
+            final Object sink = proxy(sinkCls, (p, method, args) -> {
+                checkInterruption();
+                final Object decompiled = args[0];
+                if (decompiledCls.isInstance(decompiled)) {
+                    final String pkg = (String) decompiledCls.getMethod("getPackageName").invoke(decompiled);
+                    final String name = (String) decompiledCls.getMethod("getClassName").invoke(decompiled);
+                    final String prefix = pkg == null || pkg.isEmpty() ? "" : pkg.replace('.', '/') + "/";
+                    addSource(sources, prefix + name + ".java",
+                            (String) decompiledCls.getMethod("getJava").invoke(decompiled));
+                } else if (GlobalConfig.debugPredicate) {
+                    GlobalConfig.println("CFR: " + decompiled);
+                }
+                return null;
+            });
+
+            final Object sinkFactory = proxy(sinkFactoryCls, (p, method, args) -> {
+                if (method.getName().equals("getSupportedSinks")) {
+                    final String sinkType = args[0].toString();
+                    final List<Object> supported = new ArrayList<>();
+                    for (final Object sinkClass: (Collection<?>) args[1]) {
+                        final String name = sinkClass.toString();
+                        if (sinkType.equals("JAVA") ? name.equals("DECOMPILED") : name.equals("STRING")) {
+                            supported.add(sinkClass);
+                        }
+                    }
+                    return supported;
+                }
+                return sink;
+            });
+
+            final Map<String, String> options = new HashMap<>();
+            options.put("caseinsensitivefs", "true");
+            options.put("analyseas", "JAR");
+
+            Object builder = builderCls.getConstructor().newInstance();
+            builder = builderCls.getMethod("withOptions", Map.class).invoke(builder, options);
+            builder = builderCls.getMethod("withClassFileSource", sourceCls).invoke(builder, source);
+            builder = builderCls.getMethod("withOutputSink", sinkFactoryCls).invoke(builder, sinkFactory);
+            final Object driver = builderCls.getMethod("build").invoke(builder);
+            invoke(driverCls.getMethod("analyse", List.class), driver,
+                    Collections.singletonList(INPUT_JAR));
+        }
+    }
+
+    /**
+     * `java -jar $FERNFLOWER -dgs=1 input.jar output`, where the class files only exist in memory
+     */
+    static class FernflowerStage extends DecompilerStage {
+        // a folder which does not exist, the sources never hit the disk
+        static final File INPUT_ROOT = new File(System.getProperty("java.io.tmpdir"), "jreduce_input_" + UUID.randomUUID());
+
+        FernflowerStage(final Path jar) throws IOException {
+            super("fernflower", jar);
+        }
+
+        @Override
+        protected void decompile(final SortedMap<String, byte[]> classes, final List<String> toDecompile,
+                                 final Map<String, String> sources) throws IOException, ReflectiveOperationException {
+            final Class<?> providerCls =
+                    loader.loadClass("org.jetbrains.java.decompiler.main.extern.IBytecodeProvider");
+            final Class<?> saverCls =
+                    loader.loadClass("org.jetbrains.java.decompiler.main.extern.IResultSaver");
+            final Class<?> loggerCls =
+                    loader.loadClass("org.jetbrains.java.decompiler.main.extern.IFernflowerLogger");
+            final Class<?> decompilerCls =
+                    loader.loadClass("org.jetbrains.java.decompiler.main.decompiler.BaseDecompiler");
+            final Object logger = loader.loadClass("org.jetbrains.java.decompiler.main.decompiler.PrintStreamLogger")
+                    .getConstructor(PrintStream.class)
+                    .newInstance(new PrintStream(new ByteArrayOutputStream()));
+
+            // fernflower asks the provider for the bytes of the files below INPUT_ROOT
+            final Path root = INPUT_ROOT.toPath();
+            final Object provider = proxy(providerCls, (p, method, args) -> {
+                checkInterruption();
+                final String path = root.relativize(Paths.get((String) args[0])).toString()
+                        .replace(File.separatorChar, '/');
+                final byte[] bytes = classes.get(path);
+                if (bytes == null) {
+                    throw new IOException("No such file " + path);
+                }
+                return bytes;
+            });
+            final Object saver = proxy(saverCls, (p, method, args) -> {
+                // saveClassFile(path, qualifiedName, entryName, content, mapping)
+                // saveClassEntry(path, archiveName, qualifiedName, entryName, content)
+                if (method.getName().equals("saveClassFile")) {
+                    addSource(sources, args[1] + ".java", (String) args[3]);
+                } else if (method.getName().equals("saveClassEntry")) {
+                    addSource(sources, args[2] + ".java", (String) args[4]);
+                }
+                return null;
+            });
+
+            final Map<String, Object> options = new HashMap<>();
+            options.put("dgs", "1");
+
+            final Object fernflower = decompilerCls
+                    .getConstructor(providerCls, saverCls, Map.class, loggerCls)
+                    .newInstance(provider, saver, options, logger);
+            // the classes of the other groups are only there to resolve types
+            final Set<String> decompiled = new HashSet<>(toDecompile);
+            final Method addSource = decompilerCls.getMethod("addSource", File.class);
+            final Method addLibrary = libraryMethod(decompilerCls);
+            for (final String path: classes.keySet()) {
+                final File file = new File(INPUT_ROOT, path);
+                if (decompiled.contains(outerClass(classes, path))) {
+                    addSource.invoke(fernflower, file);
+                } else if (addLibrary.getParameterCount() == 1) {
+                    addLibrary.invoke(fernflower, file);
+                } else {
+                    addLibrary.invoke(fernflower, file, false);
+                }
+            }
+            invoke(decompilerCls.getMethod("decompileContext"), fernflower);
+        }
+
+        // addLibrary(File) in recent versions, addSpace(File, isOwn = false) in older ones
+        static Method libraryMethod(final Class<?> decompilerCls) throws NoSuchMethodException {
+            try {
+                return decompilerCls.getMethod("addLibrary", File.class);
+            } catch (final NoSuchMethodException ex) {
+                return decompilerCls.getMethod("addSpace", File.class, boolean.class);
+            }
+        }
+    }
+
+    /**
+     * `java -jar $PROCYON input.jar -o src`, with a type loader serving the in-memory classes first
+     */
+    static class ProcyonStage extends DecompilerStage {
+        ProcyonStage(final Path jar) throws IOException {
+            super("procyon", jar);
+        }
+
+        @Override
+        protected void decompile(final SortedMap<String, byte[]> classes, final List<String> toDecompile,
+                                 final Map<String, String> sources) throws IOException, ReflectiveOperationException {
+            final Class<?> typeLoaderCls = loader.loadClass("com.strobel.assembler.metadata.ITypeLoader");
+            final Class<?> bufferCls = loader.loadClass("com.strobel.assembler.metadata.Buffer");
+            final Class<?> settingsCls = loader.loadClass("com.strobel.decompiler.DecompilerSettings");
+            final Class<?> outputCls = loader.loadClass("com.strobel.decompiler.ITextOutput");
+            final Class<?> plainOutputCls = loader.loadClass("com.strobel.decompiler.PlainTextOutput");
+            final Method decompileMethod = loader.loadClass("com.strobel.decompiler.Decompiler")
+                    .getMethod("decompile", String.class, outputCls, settingsCls);
+            final Method tryLoadType = typeLoaderCls.getMethod("tryLoadType", String.class, bufferCls);
+            final Object fallback = loader.loadClass("com.strobel.assembler.InputTypeLoader")
+                    .getConstructor().newInstance();
+
+            final Object typeLoader = proxy(typeLoaderCls, (p, method, args) -> {
+                final byte[] bytes = classes.get(args[0] + ".class");
+                if (bytes == null) {
+                    return tryLoadType.invoke(fallback, args);
+                }
+                final Object buffer = args[1];
+                bufferCls.getMethod("reset", int.class).invoke(buffer, bytes.length);
+                System.arraycopy(bytes, 0, (byte[]) bufferCls.getMethod("array").invoke(buffer), 0, bytes.length);
+                bufferCls.getMethod("position", int.class).invoke(buffer, 0);
+                return true;
+            });
+
+            final Object settings = settingsCls.getMethod("javaDefaults").invoke(null);
+            settingsCls.getMethod("setTypeLoader", typeLoaderCls).invoke(settings, typeLoader);
+            for (final String path: toDecompile) {
+                checkInterruption();
+                final String internalName = path.substring(0, path.length() - ".class".length());
+                final Object output = plainOutputCls.getConstructor().newInstance();
+                invoke(decompileMethod, null, internalName, output, settings);
+                addSource(sources, internalName + ".java", output.toString());
+            }
+        }
+    }
+}
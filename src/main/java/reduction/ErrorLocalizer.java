@@ -0,0 +1,86 @@
+package reduction;
+
+import helper.GlobalConfig;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Orders the reduction points by their closeness to the expected compiler errors: first the points of the classes
+ * whose source has an error, then of the classes the errors name, then the others. The binary search keeps the
+ * first necessary element and drops everything after it, so the points unrelated to the errors go in bulk and the
+ * search is spent on the classes around the errors.
+ */
+public class ErrorLocalizer {
+    // `a/b/C.java: cannot find symbol`, compile.sh drops the line number (see JReducePredicate.ERROR_LINE)
+    static final Pattern ERROR_FILE = Pattern.compile("^([^:\\s]+)\\.java:");
+    static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_$][A-Za-z0-9_$]*");
+
+    static final int IN_ERROR_FILE = 0;
+    static final int NAMED_BY_ERROR = 1;
+    static final int UNRELATED = 2;
+
+    private final Set<String> errorFiles;
+    private final Set<String> identifiers;
+
+    /**
+     * @param expectation the compiler output the reduction preserves
+     */
+    public ErrorLocalizer(final String expectation) {
+        this.errorFiles = new HashSet<>();
+        this.identifiers = new HashSet<>();
+        for (final String line: expectation.split("\n")) {
+            final Matcher file = ERROR_FILE.matcher(line);
+            if (file.find()) {
+                errorFiles.add(file.group(1).replace('\\', '/'));
+            }
+            final Matcher identifier = IDENTIFIER.matcher(line);
+            while (identifier.find()) {
+                identifiers.add(identifier.group());
+            }
+        }
+    }
+
+    // How close the class `className` (internal name) is to the errors
+    int distance(final String className) {
+        final int inner = className.indexOf('$');
+        final String topLevel = inner == -1 ? className : className.substring(0, inner);
+        for (final String file: errorFiles) {
+            if (file.equals(topLevel) || file.endsWith("/" + topLevel)) {
+                return IN_ERROR_FILE;
+            }
+        }
+        final String simpleName = className.substring(className.lastIndexOf('/') + 1);
+        for (final String part: simpleName.split("\\$")) {
+            if (identifiers.contains(part)) {
+                return NAMED_BY_ERROR;
+            }
+        }
+        return UNRELATED;
+    }
+
+    /**
+     * @param blocks the reduction points of each class, see ClassPool.getReductionBlocks
+     * @return `elements` closest to the errors first, in their order otherwise
+     */
+    public List<Integer> prioritise(final List<Integer> elements, final List<ReductionBlock> blocks) {
+        final Map<Integer, Integer> distances = new HashMap<>();
+        for (final ReductionBlock block: blocks) {
+            final int distance = distance(block.name);
+            for (final int rp: block.reductionPoints) {
+                distances.put(rp, distance);
+            }
+        }
+        final List<Integer> result = new ArrayList<>(elements);
+        // stable, the points of a class stay in order
+        result.sort(Comparator.comparingInt((rp) -> distances.getOrDefault(rp, UNRELATED)));
+        if (GlobalConfig.debug) {
+            final long close = result.stream()
+                    .filter((rp) -> distances.getOrDefault(rp, UNRELATED) != UNRELATED).count();
+            GlobalConfig.println("\t" + close + "/" + result.size() + " reduction points near the errors in "
+                    + errorFiles);
+        }
+        return result;
+    }
+}
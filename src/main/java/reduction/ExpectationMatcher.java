@@ -0,0 +1,82 @@
+package reduction;
+
+import java.util.*;
+
+/**
+ * Compares an output line by line with the expectation as it is produced, without keeping the output.
+ * The output matches when each of its lines ends with '\n' and the concatenation equals the expectation.
+ */
+public class ExpectationMatcher {
+    private final List<String> expected;
+    // an expectation without the final '\n' can't be produced line by line
+    private final boolean matchable;
+
+    private int matched;
+    private boolean diverged;
+    private String divergence;
+
+    public ExpectationMatcher(final String expectation) {
+        if (expectation.isEmpty()) {
+            this.expected = Collections.emptyList();
+            this.matchable = true;
+        } else {
+            this.matchable = expectation.endsWith("\n");
+            this.expected = Arrays.asList(expectation.substring(0, expectation.length() - 1).split("\n", -1));
+        }
+        this.matched = 0;
+        this.diverged = false;
+        this.divergence = null;
+    }
+
+    public int expectedLines() {
+        return expected.size();
+    }
+
+    // The expected lines with their number of occurrences, for outputs produced out of order
+    public Map<String, Integer> expectedCounts() {
+        final Map<String, Integer> counts = new HashMap<>();
+        for (final String line: expected) {
+            counts.merge(line, 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    /**
+     * @return false once the output can no longer match, the producer can stop then
+     */
+    public boolean accept(final String line) {
+        if (diverged) {
+            return false;
+        }
+        if (matched >= expected.size()) {
+            diverged = true;
+            divergence = "line " + (matched + 1) + ": expected end of output, got: " + line;
+        } else if (!expected.get(matched).equals(line)) {
+            diverged = true;
+            divergence = "line " + (matched + 1) + ": expected: " + expected.get(matched) + ", got: " + line;
+        } else {
+            matched += 1;
+        }
+        return !diverged;
+    }
+
+    // Call once the output is complete
+    public boolean matches() {
+        if (!diverged && matched < expected.size()) {
+            diverged = true;
+            divergence = "line " + (matched + 1) + ": expected: " + expected.get(matched) + ", got end of output";
+        }
+        return matchable && !diverged;
+    }
+
+    public boolean hasDiverged() {
+        return diverged;
+    }
+
+    /**
+     * @return the first difference between the output and the expectation, or null
+     */
+    public String getDivergence() {
+        return divergence;
+    }
+}
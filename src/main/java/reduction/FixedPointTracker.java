@@ -0,0 +1,102 @@
+package reduction;
+
+import helper.GlobalConfig;
+import helper.HashUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The state of a multi-pass reduction, which runs its passes (call removal, parameter subtyping...) in rounds over
+ * the classes the previous passes wrote, until a round changes nothing. A pass only analyzes again the classes
+ * changed since it last ran: the others are written as they are.
+ */
+public class FixedPointTracker {
+    // rounds of all the passes, in case a pass keeps flipping a class
+    public static final int MAX_ROUNDS = 10;
+
+    // pass => hash of each class right after the pass ran
+    private final Map<Integer, Map<String, String>> analyzed;
+    private int round;
+    private boolean changed;
+
+    public FixedPointTracker() {
+        this.analyzed = new HashMap<>();
+        this.round = 0;
+        this.changed = false;
+    }
+
+    /**
+     * @return the hash of each class file of `folders`, by its path relative to its folder
+     */
+    public static Map<String, String> hashClasses(final List<Path> folders) throws IOException {
+        final Map<String, String> hashes = new TreeMap<>();
+        for (final Path folder: folders) {
+            if (!Files.isDirectory(folder)) {
+                continue;
+            }
+            final List<Path> classes;
+            try (final Stream<Path> files = Files.walk(folder)) {
+                classes = files.filter(Files::isRegularFile)
+                        .filter((file) -> file.toString().endsWith(".class"))
+                        .collect(Collectors.toList());
+            }
+            for (final Path file: classes) {
+                hashes.put(folder.relativize(file).toString(), HashUtils.hashFile(file));
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * @param current the classes the pass is about to read
+     * @return the classes unchanged since `pass` last ran, which it doesn't need to analyze again
+     */
+    public Set<String> unchanged(final int pass, final Map<String, String> current) {
+        final Map<String, String> last = analyzed.getOrDefault(pass, Collections.emptyMap());
+        final Set<String> result = new HashSet<>();
+        for (final Map.Entry<String, String> entry: current.entrySet()) {
+            if (entry.getValue().equals(last.get(entry.getKey()))) {
+                result.add(entry.getKey());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Record a pass of the current round
+     * @param before the classes of the target folders before the pass
+     * @param after the classes the pass wrote
+     */
+    public void ran(final int pass, final Map<String, String> before, final Map<String, String> after) {
+        analyzed.put(pass, after);
+        if (!after.equals(before)) {
+            changed = true;
+        }
+    }
+
+    /**
+     * Continue a killed fixed point at `round`, whose first passes may have changed the classes
+     */
+    public void resumeAt(final int round) {
+        this.round = round;
+        this.changed = true;
+    }
+
+    /**
+     * End the current round
+     * @return true if another round may still reduce the classes
+     */
+    public boolean nextRound() {
+        if (GlobalConfig.debug)
+            GlobalConfig.println("Round " + round + (changed ? ": changed" : ": fixed point"));
+        final boolean again = changed && round + 1 < MAX_ROUNDS;
+        round += 1;
+        changed = false;
+        return again;
+    }
+}
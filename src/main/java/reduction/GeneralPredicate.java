@@ -1,31 +1,154 @@
 package reduction;
 
 import helper.GlobalConfig;
+import helper.HashUtils;
+import helper.ProcessUtils;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+public class GeneralPredicate extends ProcessPredicate {
+    /**
+     * Server mode: `bash predicate.sh --server` is started once in the working folder and serves requests
+     * on stdin/stdout. A request is one line holding the absolute candidate folder; the reply is the predicate
+     * output followed by the line `#exit <code>`. A script that exits instead falls back to one fork per call.
+     */
+    public static final String SERVER_FLAG = "--server";
+    public static final String EXIT_MARKER = "#exit ";
 
-public class GeneralPredicate implements Predicate {
     final Path workingFolder;
     final Path predicatePath;
 
+    private boolean serverMode = false;
+    private Process server;
+    private BufferedReader serverOutput;
+    private Writer serverInput;
+
     public GeneralPredicate(Path workingFolder, Path predicatePath) {
         this.predicatePath = predicatePath;
         this.workingFolder = workingFolder;
     }
 
+    public void setServerMode(final boolean serverMode) {
+        this.serverMode = serverMode;
+    }
+
+    @Override
+    public String getIdentity() throws IOException {
+        // the script is resolved against the working folder, but any clone of it behaves the same
+        return getClass().getName() + ":" + predicatePath.getFileName()
+                + ":" + HashUtils.hashFile(workingFolder.resolve(predicatePath))
+                + timeoutIdentity();
+    }
+
     public boolean runPredicate() throws IOException, InterruptedException {
-        final Pair<Integer, String> results = runPred();
-        return results.getLeft() == 0;
+        beginRun();
+        try {
+            final Pair<Integer, String> results = runPred();
+            return results.getLeft() == 0;
+        } catch (final PredicateTimeoutException ex) {
+            return timeoutOutcome(ex);
+        }
     }
 
     public Pair<Integer, String> runPred() throws IOException, InterruptedException {
+        if (serverMode) {
+            final Pair<Integer, String> results = runServer();
+            if (results != null) {
+                return results;
+            }
+        }
+        return runFork();
+    }
+
+    private void startServer() throws IOException {
+        final ProcessBuilder builder = new ProcessBuilder("bash", predicatePath.toString(), SERVER_FLAG);
+        builder.directory(workingFolder.toFile());
+        builder.redirectErrorStream(true);
+        if (GlobalConfig.debugCommand)
+            GlobalConfig.println(builder.command().toString());
+        server = builder.start();
+        serverOutput = new BufferedReader(new InputStreamReader(server.getInputStream(), StandardCharsets.UTF_8));
+        serverInput = new BufferedWriter(new OutputStreamWriter(server.getOutputStream(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the reply of the predicate server, or null if the script does not speak the protocol
+     */
+    private synchronized Pair<Integer, String> runServer() throws IOException, InterruptedException {
+        if (server == null) {
+            startServer();
+        }
+        final Pair<Integer, String> results;
+        try {
+            results = supervise(server, this::requestServer, false);
+        } catch (final PredicateTimeoutException | CancellationException ex) {
+            // the server was killed, restart it on the next call
+            close();
+            throw ex;
+        }
+        if (results == null) {
+            // the server is gone: don't restart it, fork per call from now on
+            if (GlobalConfig.debug)
+                GlobalConfig.println("Predicate server exited, falling back to one process per call");
+            close();
+            serverMode = false;
+        }
+        return results;
+    }
+
+    private Pair<Integer, String> requestServer() {
+        final StringBuilder accOutput = new StringBuilder();
+        try {
+            serverInput.write(workingFolder.toAbsolutePath().toString());
+            serverInput.write('\n');
+            serverInput.flush();
+
+            String output;
+            while ((output = serverOutput.readLine()) != null) {
+                if (output.startsWith(EXIT_MARKER)) {
+                    return ImmutablePair.of(Integer.parseInt(output.substring(EXIT_MARKER.length()).trim()),
+                            accOutput.toString());
+                }
+                accOutput.append(output);
+                accOutput.append('\n');
+            }
+        } catch (final IOException | NumberFormatException e) {
+            if (GlobalConfig.debugPredicate)
+                GlobalConfig.println("Predicate server failed: " + e);
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (server == null) {
+            return;
+        }
+        try {
+            // EOF on stdin asks the server to exit
+            serverInput.close();
+        } catch (final IOException ignored) {
+        }
+        try {
+            server.waitFor(1, TimeUnit.SECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (server.isAlive()) {
+            ProcessUtils.destroyTree(server);
+        }
+        serverOutput.close();
+        server = null;
+    }
+
+    private Pair<Integer, String> runFork() throws IOException, InterruptedException {
         final StringBuilder accOutput = new StringBuilder();
-        String output;
 
         // compile.sh requires `bash`
         final ProcessBuilder builder = new ProcessBuilder("bash", predicatePath.toString());
@@ -34,18 +157,18 @@ public class GeneralPredicate implements Predicate {
         if (GlobalConfig.debugCommand)
             GlobalConfig.println(builder.command().toString());
         final Process process = builder.start();
-        final BufferedReader br = new BufferedReader(new InputStreamReader(process.getInputStream()));
-
-        while ((output = br.readLine()) != null) {
-            accOutput.append(output);
-            accOutput.append('\n');
-        }
 
-        process.waitFor();
-        // compile.sh will return 1 when compiling successes
-        final int exitValue = process.exitValue();
-        process.destroy();
+        return supervise(process, () -> {
+            final BufferedReader br = new BufferedReader(new InputStreamReader(process.getInputStream()));
+            String output;
+            while ((output = br.readLine()) != null) {
+                accOutput.append(output);
+                accOutput.append('\n');
+            }
 
-        return ImmutablePair.of(exitValue, accOutput.toString());
+            process.waitFor();
+            // compile.sh will return 1 when compiling successes
+            return ImmutablePair.of(process.exitValue(), accOutput.toString());
+        }, true);
     }
 }
@@ -1,12 +1,13 @@
 package reduction;
 
 import graph.Hierarchy;
-import helper.GlobalConfig;
 import jvm.ClassAnalyzeOptions;
 import jvm.ClassPool;
-import org.apache.commons.lang3.tuple.ImmutablePair;
+import jvm.LibCache;
 import org.apache.commons.lang3.tuple.Pair;
 
+import org.apache.commons.io.FileUtils;
+
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -14,44 +15,88 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
-public class GeneralWorkingEnv {
+public class GeneralWorkingEnv extends WorkingEnv<GeneralPredicate> {
     final List<Path> srcPath;
     final List<Path> targetPath;
     final List<Path> libPath;
     final Path predicatePath;
-    final Path workingFolder;
     final Set<String> omittedClasses;
     final int option;
 
+    // keep the predicate script resident, see GeneralPredicate.SERVER_FLAG
+    public boolean predicateServer = false;
+    // kept by a ReductionDaemon across its jobs
+    public LibCache libCache = null;
+
     public static int methodRemoval = 0;
     public static int classCollapse = 1;
 
     public GeneralWorkingEnv(List<Path> srcPath, List<Path> libPath, Path predicatePath, List<Path> targetPath, Path workingFolder,
                              Set<String> omittedClasses,
                              int option) {
+        super(workingFolder);
         this.srcPath = srcPath;
         this.targetPath = targetPath;
         this.libPath = libPath;
         this.predicatePath = predicatePath;
-        this.workingFolder = workingFolder;
         this.omittedClasses = omittedClasses;
         this.option = option;
     }
 
+    public GeneralPredicate createPredicate(final Path folder) {
+        final GeneralPredicate predicate = new GeneralPredicate(folder, predicatePath);
+        predicate.setServerMode(predicateServer);
+        predicate.setTimeout(predicateTimeout, timeoutAsPass);
+        return predicate;
+    }
+
+    @Override
+    protected List<Path> sourcePaths() {
+        return srcPath;
+    }
+
+    @Override
+    protected List<Path> targetPaths() {
+        return targetPath;
+    }
+
+    @Override
+    protected ClassPool createPool(final List<Path> input) {
+        return new ClassPool(input, libPath, targetPath);
+    }
+
+    @Override
+    protected void readLibs(final ClassPool pool, final Hierarchy hierarchy) throws IOException {
+        pool.readLibs(hierarchy, libCache);
+    }
+
+    @Override
+    protected Set<String> omittedClasses() {
+        return omittedClasses;
+    }
+
+    @Override
+    protected GeneralPredicate createPassPredicate(final int pass) {
+        return createPredicate(workingFolder);
+    }
+
     public boolean runIdentity() throws IOException, InterruptedException {
         final Hierarchy hierarchy = new Hierarchy();
         final ClassAnalyzeOptions options = new ClassAnalyzeOptions();
         options.addMethodRemoval = false;
         final ClassPool pool = new ClassPool(srcPath, libPath, targetPath);
 
-        pool.readLibs(hierarchy);
+        pool.readLibs(hierarchy, libCache);
         pool.readClasses(hierarchy, options);
 
         pool.identityWriteClasses(hierarchy);
 
-        final GeneralPredicate predicate = new GeneralPredicate(workingFolder, predicatePath);
-
-        return predicate.runPredicate();
+        final GeneralPredicate predicate = createPredicate(workingFolder);
+        try {
+            return predicate.runPredicate();
+        } finally {
+            predicate.close();
+        }
     }
 
     public Pair<Set<Integer>, Boolean> runReduction() throws IOException, InterruptedException {
@@ -59,10 +104,16 @@ public class GeneralWorkingEnv {
 
         Pair<Set<Integer>, Boolean> result;
 
-        if (this.option == JReduceWorkingEnv.methodRemoval) {
-            result = runReductionMethod(hierarchy, srcPath, targetPath);
-        } else {
-            result = runReductionClass(hierarchy, srcPath, targetPath);
+        try {
+            if (fixedPoint) {
+                result = runReductionFixedPoint(hierarchy);
+            } else if (this.option == JReduceWorkingEnv.methodRemoval) {
+                result = runReductionMethod(hierarchy, srcPath, targetPath);
+            } else {
+                result = runReductionClass(hierarchy, srcPath, targetPath);
+            }
+        } finally {
+            removeWorkspaces();
         }
 
         return result;
@@ -75,13 +126,13 @@ public class GeneralWorkingEnv {
         final ClassPool pool = new ClassPool(source, libPath, target);
 
         // read lib & classes
-        pool.readLibs(hierarchy);
+        pool.readLibs(hierarchy, libCache);
         pool.readClasses(hierarchy, omittedClasses, options);
 
         // post-compute the edges
         hierarchy.addEdges();
 
-        final GeneralPredicate predicate = new GeneralPredicate(workingFolder, predicatePath);
+        final GeneralPredicate predicate = createPredicate(workingFolder);
 
         final List<Integer> list = new ArrayList<>();
         for (int i = 0; i < hierarchy.reductionPoints.size(); ++i) {
@@ -101,7 +152,7 @@ public class GeneralWorkingEnv {
         startOption.doReduction = false;
         startOption.checkClassAdapter = false;
         startOption.addMethodRemoval = false;
-        pool.readLibs(hierarchy);
+        pool.readLibs(hierarchy, libCache);
         pool.readClasses(hierarchy, omittedClasses, startOption);
         hierarchy.addEdges();
 
@@ -118,7 +169,7 @@ public class GeneralWorkingEnv {
         // read classes again
         pool.readClasses(hierarchy, options);
 
-        final GeneralPredicate predicate = new GeneralPredicate(workingFolder, predicatePath);
+        final GeneralPredicate predicate = createPredicate(workingFolder);
 
         final List<Integer> list = new ArrayList<>();
         for (int i = 0; i < hierarchy.reductionPoints.size(); ++i) {
@@ -128,21 +179,37 @@ public class GeneralWorkingEnv {
         return runReductionElement(list, hierarchy, pool, predicate);
     }
 
-    private Pair<Set<Integer>, Boolean> runReductionElement(
-            final List<Integer> elements,
-            final Hierarchy hierarchy,
-            final ClassPool pool, final GeneralPredicate predicate)
-            throws IOException, InterruptedException {
-        final BinaryPolicy<Integer> policy = new BinaryPolicy<>(
-                hierarchy, elements, BinaryPolicy.ID_AGGREGATOR);
-        policy.runReduction(pool, predicate);
-
-        final boolean isValidFinal = policy.runFinal(pool, predicate);
-        if (GlobalConfig.debug) {
-            GlobalConfig.println("Element Level => (" + isValidFinal + ") "
-                    + policy.getProgressions().size() + "/" + hierarchy.reductionPoints.size());
+    /**
+     * Clone the working folder (without the targets) once per parallel candidate, into workspacesPath. The targets
+     * have to be in the working folder: the predicate of a workspace finds its targets at the same place in the clone.
+     */
+    @Override
+    protected List<Workspace> createWorkspaces(final GeneralPredicate predicate) throws IOException {
+        final List<Workspace> workspaces = new ArrayList<>();
+        final int count = workspaceCount();
+        final Path workingPath = workingFolder.toAbsolutePath().normalize();
+        final Path workspacesPath = workspacesPath().toAbsolutePath().normalize();
+        final Set<Path> targets = new HashSet<>();
+        for (final Path target: targetPath) {
+            targets.add(target.toAbsolutePath().normalize());
+            if (count > 0 && !target.toAbsolutePath().normalize().startsWith(workingPath)) {
+                throw new IllegalArgumentException("Parallel candidates need the target in the working folder: "
+                        + target);
+            }
         }
-
-        return ImmutablePair.of(policy.getProgressions(), isValidFinal);
+        for (int i = 0; i < count; ++i) {
+            final Path folder = workspacePath(i).toAbsolutePath().normalize();
+            FileUtils.copyDirectory(workingPath.toFile(), folder.toFile(), (f) -> {
+                final Path path = f.toPath().toAbsolutePath().normalize();
+                return !targets.contains(path) && !path.equals(workspacesPath);
+            });
+
+            final List<Path> workspaceTarget = new ArrayList<>();
+            for (final Path target: targetPath) {
+                workspaceTarget.add(folder.resolve(workingPath.relativize(target.toAbsolutePath().normalize())));
+            }
+            workspaces.add(new Workspace(folder, workspaceTarget, createPredicate(folder)));
+        }
+        return workspaces;
     }
 }
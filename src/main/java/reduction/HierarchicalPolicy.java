@@ -0,0 +1,186 @@
+package reduction;
+
+import graph.Hierarchy;
+import helper.GlobalConfig;
+import jvm.ClassPool;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Reduces whole classes first, then the methods of the kept classes, then the reduction points of the kept
+ * methods, each level with the strategy `strategy`. An irrelevant class costs a few predicate runs instead
+ * of one search per reduction point.
+ */
+public class HierarchicalPolicy implements ReductionStrategy<Integer> {
+    private final String strategy;
+    private final Hierarchy hierarchy;
+    private final List<ReductionBlock> blocks;
+    // reduction point => its position in the elements, the levels search in that order
+    private final Map<Integer, Integer> order;
+
+    private PredicateCache cache;
+    private PredicateJournal journal;
+    private ReductionBudget budget;
+    private List<Workspace> workspaces;
+    private boolean pipelined;
+    private boolean weighted;
+    private boolean galloping;
+
+    // the strategy of the reduction point level, which gives the final result
+    private ReductionStrategy<Integer> last;
+
+    /**
+     * @param blocks the reduction points of each class, see ClassPool.getReductionBlocks,
+     *               the elements which belong to no block are reduced as one more block
+     */
+    public HierarchicalPolicy(final String strategy, final Hierarchy hierarchy, final List<Integer> elements,
+                              final List<ReductionBlock> blocks) {
+        this.strategy = strategy;
+        this.hierarchy = hierarchy;
+        this.order = new HashMap<>();
+        for (int i = 0; i < elements.size(); ++i) {
+            order.put(elements.get(i), i);
+        }
+        final SortedSet<Integer> remaining = new TreeSet<>(elements);
+        this.blocks = new ArrayList<>();
+        for (final ReductionBlock block: blocks) {
+            final ReductionBlock restricted = block.restrict(remaining);
+            if (restricted != null) {
+                this.blocks.add(restricted);
+                remaining.removeAll(restricted.reductionPoints);
+            }
+        }
+        if (!remaining.isEmpty()) {
+            this.blocks.add(new ReductionBlock("", remaining));
+        }
+        sort(this.blocks);
+        this.cache = null;
+        this.journal = null;
+        this.budget = null;
+        this.workspaces = Collections.emptyList();
+        this.pipelined = false;
+        this.weighted = false;
+        this.galloping = false;
+        this.last = null;
+    }
+
+    @Override
+    public void setCache(final PredicateCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public void setBudget(final ReductionBudget budget) {
+        this.budget = budget;
+    }
+
+    // A journal session numbers the elements of a single search, each level is a session
+    @Override
+    public void setJournal(final PredicateJournal journal) {
+        this.journal = journal;
+    }
+
+    @Override
+    public void setWorkspaces(final List<Workspace> workspaces) {
+        this.workspaces = workspaces;
+        this.pipelined = false;
+    }
+
+    @Override
+    public void setPipelined(final List<Workspace> workspaces) {
+        this.workspaces = workspaces;
+        this.pipelined = true;
+    }
+
+    @Override
+    public void setWeighted(final boolean weighted) {
+        this.weighted = weighted;
+    }
+
+    @Override
+    public void setGalloping(final boolean galloping) {
+        this.galloping = galloping;
+    }
+
+    private <T extends Comparable<? super T>> ReductionStrategy<T> createLevel(
+            final List<T> space, final Function<SortedSet<T>, SortedSet<Integer>> aggregator) {
+        final ReductionStrategy<T> policy = ReductionStrategy.create(strategy, hierarchy, space, aggregator);
+        if (pipelined) {
+            policy.setPipelined(workspaces);
+        } else {
+            policy.setWorkspaces(workspaces);
+        }
+        policy.setCache(cache);
+        if (journal != null) {
+            policy.setJournal(journal.session(space.size()));
+        }
+        policy.setBudget(budget);
+        policy.setWeighted(weighted);
+        policy.setGalloping(galloping);
+        return policy;
+    }
+
+    /**
+     * Reduce the blocks of a level, checking that the kept ones still preserve the predicate
+     * @return the kept blocks, all of them if no reduced closure passed
+     */
+    private SortedSet<ReductionBlock> runLevel(final String level, final List<ReductionBlock> space,
+                                               final ClassPool classPool, final Predicate predicate)
+            throws IOException, InterruptedException {
+        final ReductionStrategy<ReductionBlock> policy = createLevel(space, BinaryPolicy.BLOCK_AGGREGATOR);
+        policy.runReduction(classPool, predicate);
+        final boolean isValid = policy.runFinal(classPool, predicate);
+        final SortedSet<ReductionBlock> kept = isValid ? policy.getProgressions() : new TreeSet<>(space);
+        if (GlobalConfig.debug)
+            GlobalConfig.println(level + " Level => (" + isValid + ") " + kept.size() + "/" + space.size());
+        return kept;
+    }
+
+    // In the order of their first element
+    private void sort(final List<ReductionBlock> blocks) {
+        blocks.sort(Comparator.comparingInt((block) -> block.reductionPoints.stream()
+                .mapToInt(order::get).min().orElse(Integer.MAX_VALUE)));
+    }
+
+    // The nested blocks of `blocks`, a block without any standing for itself
+    private List<ReductionBlock> children(final Collection<ReductionBlock> blocks) {
+        final List<ReductionBlock> result = new ArrayList<>();
+        for (final ReductionBlock block: blocks) {
+            if (block.children.isEmpty()) {
+                result.add(block);
+            } else {
+                result.addAll(block.children);
+            }
+        }
+        sort(result);
+        return result;
+    }
+
+    @Override
+    public void runReduction(final ClassPool classPool, final Predicate predicate)
+            throws IOException, InterruptedException {
+        final SortedSet<ReductionBlock> classes = runLevel("Class", blocks, classPool, predicate);
+        final SortedSet<ReductionBlock> methods = runLevel("Method", children(classes), classPool, predicate);
+
+        final List<Integer> space = new ArrayList<>();
+        for (final ReductionBlock block: methods) {
+            space.addAll(block.reductionPoints);
+        }
+        space.sort(Comparator.comparing(order::get));
+        last = createLevel(space, BinaryPolicy.ID_AGGREGATOR);
+        last.runReduction(classPool, predicate);
+    }
+
+    @Override
+    public boolean runFinal(final ClassPool classPool, final Predicate predicate)
+            throws IOException, InterruptedException {
+        return last.runFinal(classPool, predicate);
+    }
+
+    @Override
+    public SortedSet<Integer> getProgressions() {
+        return last == null ? new TreeSet<>() : last.getProgressions();
+    }
+}
@@ -1,18 +1,38 @@
 package reduction;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import com.github.difflib.DiffUtils;
 import com.github.difflib.patch.AbstractDelta;
 import helper.GlobalConfig;
+import helper.HashUtils;
+import helper.ProcessUtils;
+import jvm.ClassPool;
+
+public class JReducePredicate extends ProcessPredicate {
+    // same as the `sed` filter of compile.sh, which keeps the message after the file name
+    static final Pattern ERROR_LINE = Pattern.compile("^([^.]*.java):[0-9]*: error");
+    // written by compile.sh in the folder of the sources: javac's output, and the sorted errors it prints
+    static final String JAVAC_OUTPUT = "compiler.out.txt";
+    static final String COMPILE_OUTPUT = "compiler.sorted.txt";
+    // milliseconds between two reads of javac's output
+    static final long TAIL_POLL = 20;
 
-public class JReducePredicate implements Predicate {
     public final Path workingFolder;
     public final Path predicatePath;
     public final Path compilePath;
@@ -23,6 +43,10 @@ public class JReducePredicate implements Predicate {
     public final String expectation;
     public boolean saveDiff;
 
+    // decompiles the class bytes of `classPool` in-process instead of running the predicate script
+    private DecompilerStage decompilerStage;
+    private ClassPool classPool;
+
     public JReducePredicate(final Path workingFolder, final String decompiler,
                             final Path predicatePath, final Path compilePath, final Path sourcePath,
                             final Path libPath, final Path expectationPath,
@@ -42,13 +66,40 @@ public class JReducePredicate implements Predicate {
                 env.currentTargetPath(), env.libPath(), env.expectationPath(), saveDiff);
     }
 
+    @Override
+    public String getIdentity() throws IOException {
+        return getClass().getName() + ":" + decompiler + ":" + libPath.toAbsolutePath()
+                + ":" + HashUtils.hashFile(predicatePath)
+                + ":" + HashUtils.hashFile(compilePath)
+                + ":" + HashUtils.hash(expectation)
+                + ":" + (decompilerStage == null ? "script" : "in-process")
+                + timeoutIdentity();
+    }
+
+    public DecompilerStage getDecompilerStage() {
+        return decompilerStage;
+    }
+
+    public void setDecompilerStage(final DecompilerStage decompilerStage, final ClassPool classPool) {
+        this.decompilerStage = decompilerStage;
+        this.classPool = classPool;
+    }
+
     public boolean runPredicate() throws IOException, InterruptedException {
-        return runCompile(runPrepare());
+        beginRun();
+        try {
+            return runCompile(runPrepare());
+        } catch (final PredicateTimeoutException ex) {
+            return timeoutOutcome(ex);
+        }
     }
 
     public String runPrepare() throws IOException, InterruptedException {
+        if (decompilerStage != null) {
+            return runStage();
+        }
+
         final StringBuilder accOutput = new StringBuilder();
-        String output;
 
         final ProcessBuilder builder = new ProcessBuilder(
                 predicatePath.toString(), sourcePath.toString(), libPath.toString());
@@ -57,68 +108,170 @@ public class JReducePredicate implements Predicate {
         if (GlobalConfig.debugCommand)
             GlobalConfig.println(builder.command().toString());
         final Process process = builder.start();
-        final BufferedReader br = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        final int exitValue = supervise(process, () -> {
+            final BufferedReader br = new BufferedReader(new InputStreamReader(process.getInputStream()));
+            String output;
+            while ((output = br.readLine()) != null)
+                accOutput.append(output);
 
-        while ((output = br.readLine()) != null)
-            accOutput.append(output);
-
-        process.waitFor();
-        if (process.exitValue() != 0)
+            return process.waitFor();
+        }, true);
+        if (exitValue != 0)
             return null;
-        process.destroy();
 
         return Paths.get(accOutput.toString()).getFileName().toString();
     }
 
+    // The scripts decompile into `<script folder>/<decompiler>`
+    private String runStage() throws IOException {
+        final SortedMap<String, byte[]> classes = classPool.getWrittenClasses(sourcePath);
+        if (classes == null) {
+            return null;
+        }
+        final Path output = predicatePath.toAbsolutePath().getParent().resolve(decompiler);
+        return decompilerStage.run(classes, output, this::checkInterrupt);
+    }
+
     public boolean runCompile(final String srcPath) throws IOException, InterruptedException {
-        final StringBuilder accOutput = new StringBuilder();
-        String output;
+        if (srcPath == null) {
+            return false;
+        }
+        final ExpectationMatcher matcher = new ExpectationMatcher(expectation);
+        final Path outputFolder = workingFolder.resolve(srcPath);
+        final Path javacOutput = outputFolder.resolve(JAVAC_OUTPUT);
+        final Path scriptOutput = outputFolder.resolve(COMPILE_OUTPUT);
+        // not to read the output of the last compilation before compile.sh truncates it
+        Files.deleteIfExists(javacOutput);
 
         // compile.sh requires `bash`
         final ProcessBuilder builder = new ProcessBuilder(
                 "bash", compilePath.toString(), srcPath, libPath.toString());
         builder.directory(this.workingFolder.toFile());
         builder.redirectErrorStream(true);
+        builder.redirectOutput(scriptOutput.toFile());
         if (GlobalConfig.debugCommand)
             GlobalConfig.println(builder.command().toString());
         final Process process = builder.start();
-        final BufferedReader br = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        final JavacOutputTail tail = new JavacOutputTail(javacOutput, matcher.expectedCounts());
+        // the whole output, to save its difference with the expectation
+        final List<String> output = new ArrayList<>();
+        // compile.sh will return 1 when compiling successes
+        final int exitValue = supervise(process, () -> {
+            // compile.sh only prints the sorted errors once javac exits, javac's own output is checked meanwhile:
+            // the candidate fails as soon as javac reports an unexpected error, don't wait for the rest
+            while (!process.waitFor(TAIL_POLL, TimeUnit.MILLISECONDS)) {
+                if (!tail.poll() && !saveDiff) {
+                    ProcessUtils.destroyTree(process);
+                    return -1;
+                }
+            }
+            try (final BufferedReader br = Files.newBufferedReader(scriptOutput, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    if (saveDiff) {
+                        output.add(line);
+                    }
+                    if (!matcher.accept(line) && !saveDiff) {
+                        return -1;
+                    }
+                }
+            }
+            return process.exitValue();
+        }, true);
 
-        while ((output = br.readLine()) != null) {
-            accOutput.append(output);
-            accOutput.append('\n');
+        final boolean matches = tail.divergence == null && matcher.matches();
+        final String divergence = tail.divergence != null ? tail.divergence : matcher.getDivergence();
+        if (saveDiff) {
+            saveDifference(output);
         }
 
-        process.waitFor();
-        // compile.sh will return 1 when compiling successes
-        final int exitValue = process.exitValue();
-        process.destroy();
+        if (GlobalConfig.debugPredicate) {
+            GlobalConfig.println("Compile output: " + (matches ? "matches the expectation" : divergence));
+        }
+        return (exitValue == 0) && matches;
+    }
 
-        if (saveDiff) {
-            final List<AbstractDelta<String>> deltas = DiffUtils.diff(
-                    Arrays.asList(expectation.split("\n")),
-                    Arrays.asList(accOutput.toString().split("\n"))).getDeltas();
-            final FileWriter f = new FileWriter("logs/expectation_diff.txt", true);
-            if (!deltas.isEmpty()) {
-                f.write("Differences: \n");
-                deltas.forEach((d) -> {
-                    try {
-                        f.write("\t" + d.toString() + '\n');
-                    } catch (IOException e) {
-                        e.printStackTrace();
+    /**
+     * Reads the output of javac as compile.sh writes it, checking its error lines against the expected ones.
+     * The errors arrive unsorted, so they are checked as a multiset.
+     */
+    static class JavacOutputTail {
+        final Path path;
+        // expected error lines which did not show up yet
+        final Map<String, Integer> remaining;
+        final ByteArrayOutputStream line;
+        long position;
+        // the first error line which can't be part of the expectation
+        String divergence;
+
+        JavacOutputTail(final Path path, final Map<String, Integer> expected) {
+            this.path = path;
+            this.remaining = new HashMap<>(expected);
+            this.line = new ByteArrayOutputStream();
+            this.position = 0;
+            this.divergence = null;
+        }
+
+        /**
+         * Check the lines written since the last call
+         * @return false once an error line can't be part of the expectation
+         */
+        boolean poll() throws IOException {
+            if (divergence != null || !Files.exists(path)) {
+                return divergence == null;
+            }
+            try (final SeekableByteChannel in = Files.newByteChannel(path)) {
+                in.position(position);
+                final ByteBuffer buffer = ByteBuffer.allocate(8192);
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    position += read;
+                    buffer.flip();
+                    for (int i = 0; i < read; ++i) {
+                        final byte b = buffer.get();
+                        if (b == '\n') {
+                            if (!accept(new String(line.toByteArray(), StandardCharsets.UTF_8))) {
+                                return false;
+                            }
+                            line.reset();
+                        } else {
+                            line.write(b);
+                        }
                     }
-                });
-                // final Path compilerOutput = workingFolder.resolve(decompiler).resolve("compiler.out.txt");
-                // final Scanner s = new Scanner(compilerOutput.toFile());
-                // while (s.hasNextLine()) { f.write("\t" + s.nextLine() + "\n"); }
-                f.flush();
+                    buffer.clear();
+                }
             }
-            f.close();
+            return true;
         }
 
-        if (GlobalConfig.debugPredicate) {
-            GlobalConfig.println("Compile output: " + accOutput);
+        // the same filter as the `sed` of compile.sh
+        private boolean accept(final String output) {
+            final Matcher m = ERROR_LINE.matcher(output);
+            if (!m.find()) {
+                return true;
+            }
+            final String error = m.group(1) + output.substring(m.end());
+            final int count = remaining.getOrDefault(error, 0);
+            if (count == 0) {
+                divergence = "unexpected error: " + error;
+                return false;
+            }
+            remaining.put(error, count - 1);
+            return true;
+        }
+    }
+
+    void saveDifference(final List<String> output) throws IOException {
+        final List<AbstractDelta<String>> deltas = DiffUtils.diff(
+                Arrays.asList(expectation.split("\n")), output).getDeltas();
+        if (deltas.isEmpty()) {
+            return;
+        }
+        try (final FileWriter f = new FileWriter("logs/expectation_diff.txt", true)) {
+            f.write("Differences: \n");
+            for (final AbstractDelta<String> d: deltas) {
+                f.write("\t" + d.toString() + '\n');
+            }
         }
-        return (exitValue == 0) && (accOutput.toString().equals(expectation));
     }
 }
@@ -15,8 +15,7 @@ import java.nio.file.Paths;
 import java.nio.file.attribute.PosixFilePermission;
 import java.util.*;
 
-public class JReduceWorkingEnv {
-    public final Path workingFolder;
+public class JReduceWorkingEnv extends WorkingEnv<JReducePredicate> {
     public final Path staticPredicatePath;
     public final Path staticCompilePath;
     public final String srcFolder;
@@ -28,6 +27,17 @@ public class JReduceWorkingEnv {
 
     public Path currentTargetPath;
 
+    // see ErrorLocalizer (-L)
+    public boolean localizeErrors = false;
+    // javac in-process instead of compile.sh (-I), recompiling only the changes and their dependents (-i)
+    public boolean inProcessCompile = false;
+    public boolean incrementalCompile = false;
+    // the jar of `decompiler` to run in-process (-d), decompiling only the changed class groups (-e)
+    public Path decompilerJar = null;
+    public boolean incrementalDecompile = false;
+    // see AnalysisSnapshot
+    public AnalysisSnapshot.Store snapshots = null;
+
     public final String decompiler;
 
     public static int methodRemoval = 0;
@@ -35,7 +45,7 @@ public class JReduceWorkingEnv {
 
     public JReduceWorkingEnv(final Path workingFolder, final String srcFolder, final String targetFolder,
                              final Path staticPredicatePath, final Path staticCompilePath, final String decompiler, final int option) {
-        this.workingFolder = workingFolder;
+        super(workingFolder);
         this.srcFolder = srcFolder;
         this.targetFolder = targetFolder;
         this.staticPredicatePath = staticPredicatePath;
@@ -56,11 +66,11 @@ public class JReduceWorkingEnv {
     }
 
     public static Path jreduceFolder(final String name, final String decompiler) {
-        return Paths.get("/Users/liranxiao/result/full/"
-                + name
-                + "/"
-                + decompiler
-                + "/items+logic/");
+        return jreduceFolder(Paths.get("/Users/liranxiao/result/full/"), name, decompiler);
+    }
+
+    public static Path jreduceFolder(final Path root, final String name, final String decompiler) {
+        return root.resolve(name).resolve(decompiler).resolve("items+logic");
     }
 
     public static Path staticPredicatePath(final String decompiler) {
@@ -109,6 +119,31 @@ public class JReduceWorkingEnv {
         return currentTargetPath;
     }
 
+    @Override
+    protected List<Path> sourcePaths() {
+        return Collections.singletonList(srcPath());
+    }
+
+    @Override
+    protected List<Path> targetPaths() {
+        return Collections.singletonList(targetPath());
+    }
+
+    @Override
+    protected ClassPool createPool(final List<Path> input) {
+        return new ClassPool(input, Collections.singletonList(libPath()), targetPaths());
+    }
+
+    @Override
+    protected void readLibs(final ClassPool pool, final Hierarchy hierarchy) throws IOException {
+        pool.readLibs(hierarchy);
+    }
+
+    @Override
+    protected JReducePredicate createPassPredicate(final int pass) throws IOException {
+        return createPredicate(pass == methodRemoval && GlobalConfig.debugPredicateDiff);
+    }
+
     public void setTemp() throws IOException {
         final Set<PosixFilePermission> perms = Files.getPosixFilePermissions(staticPredicatePath);
 
@@ -124,6 +159,85 @@ public class JReduceWorkingEnv {
         FileUtils.deleteDirectory(workingFolder.resolve(decompiler).toFile());
     }
 
+    public JReducePredicate createPredicate(final Path folder, final Path predicatePath, final Path compilePath,
+                                            final Path target, final boolean saveDiff) throws IOException {
+        final JReducePredicate predicate;
+        if (inProcessCompile || incrementalCompile) {
+            final JavacPredicate javac = new JavacPredicate(folder, decompiler, predicatePath, compilePath,
+                    target, libPath(), expectationPath(), saveDiff);
+            javac.setIncremental(incrementalCompile);
+            predicate = javac;
+        } else {
+            predicate = new JReducePredicate(folder, decompiler, predicatePath, compilePath,
+                    target, libPath(), expectationPath(), saveDiff);
+        }
+        predicate.setTimeout(predicateTimeout, timeoutAsPass);
+        return predicate;
+    }
+
+    public JReducePredicate createPredicate(final boolean saveDiff) throws IOException {
+        return createPredicate(workingFolder, targetPredicatePath(), targetCompilePath(), currentTargetPath(), saveDiff);
+    }
+
+    @Override
+    protected List<Integer> searchOrder(final List<Integer> elements, final ClassPool pool,
+                                        final JReducePredicate predicate) {
+        return localizeErrors
+                ? new ErrorLocalizer(predicate.expectation).prioritise(elements, pool.getReductionBlocks())
+                : elements;
+    }
+
+    @Override
+    protected void preparePredicate(final JReducePredicate predicate, final ClassPool pool) throws IOException {
+        attachDecompilerStage(predicate, pool);
+    }
+
+    @Override
+    protected void prepareWorkspace(final Workspace workspace, final ClassPool pool) throws IOException {
+        attachDecompilerStage((JReducePredicate) workspace.predicate, pool);
+    }
+
+    /**
+     * Attach a decompiler stage reading the written classes of `pool`, if requested.
+     * Every predicate owns its stage, so that concurrent workspaces never share decompiler state.
+     */
+    public void attachDecompilerStage(final JReducePredicate predicate, final ClassPool pool) throws IOException {
+        if (decompilerJar != null) {
+            DecompilerStage stage = predicate.getDecompilerStage();
+            if (stage == null) {
+                stage = DecompilerStage.create(decompiler, decompilerJar);
+                stage.setIncremental(incrementalDecompile);
+            }
+            predicate.setDecompilerStage(stage, pool);
+        }
+    }
+
+    /**
+     * Each workspace gets its own predicate scripts (they decompile next to themselves) and target folder
+     */
+    @Override
+    protected List<Workspace> createWorkspaces(final JReducePredicate mainPredicate) throws IOException {
+        final List<Workspace> workspaces = new ArrayList<>();
+        final Set<PosixFilePermission> perms = Files.getPosixFilePermissions(staticPredicatePath);
+        for (int i = 0; i < workspaceCount(); ++i) {
+            final Path folder = workspacePath(i);
+            Files.createDirectories(folder);
+
+            final Path predicatePath = folder.resolve(targetPredicatePath().getFileName());
+            final Path compilePath = folder.resolve(targetCompilePath().getFileName());
+            FileUtils.copyFile(srcPredicatePath().toFile(), predicatePath.toFile());
+            Files.setPosixFilePermissions(predicatePath, perms);
+            FileUtils.copyFile(srcCompilePath().toFile(), compilePath.toFile());
+            Files.setPosixFilePermissions(compilePath, perms);
+
+            final Path target = folder.resolve(targetFolder);
+            final JReducePredicate predicate = createPredicate(folder, predicatePath, compilePath, target,
+                    mainPredicate.saveDiff);
+            workspaces.add(new Workspace(folder, Collections.singletonList(target), predicate));
+        }
+        return workspaces;
+    }
+
     public void runSingle(final Path path) throws IOException, InterruptedException {
         final Hierarchy hierarchy = new Hierarchy();
         final ClassAnalyzeOptions options = new ClassAnalyzeOptions();
@@ -136,8 +250,13 @@ public class JReduceWorkingEnv {
         for (int i = 0; i < hierarchy.reductionPoints.size(); ++i) {
             list.add(i);
         }
-        final JReducePredicate JReducePredicate = new JReducePredicate(this, decompiler, GlobalConfig.debugPredicateDiff);
-        final Pair<Set<Integer>, Boolean> result = runReductionElement(list, hierarchy, pool, JReducePredicate);
+        final JReducePredicate JReducePredicate = createPredicate(GlobalConfig.debugPredicateDiff);
+        final Pair<Set<Integer>, Boolean> result;
+        try {
+            result = runReductionElement(list, hierarchy, pool, JReducePredicate);
+        } finally {
+            removeWorkspaces();
+        }
         System.out.println(result);
     }
 
@@ -153,20 +272,40 @@ public class JReduceWorkingEnv {
 
         pool.identityWriteClasses(hierarchy);
 
-        final JReducePredicate JReducePredicate = new JReducePredicate(this, decompiler, GlobalConfig.debugPredicateDiff);
-
-        return JReducePredicate.runPredicate();
+        final JReducePredicate JReducePredicate = createPredicate(GlobalConfig.debugPredicateDiff);
+        try {
+            attachDecompilerStage(JReducePredicate, pool);
+            return JReducePredicate.runPredicate();
+        } finally {
+            JReducePredicate.close();
+        }
     }
 
     public String runReduction() throws IOException, InterruptedException {
-        final Hierarchy hierarchy = new Hierarchy();
+        // the passes of a fixed point analyse the classes the previous ones wrote, they can't be shared
+        final AnalysisSnapshot snapshot = snapshots == null || fixedPoint ? null
+                : snapshots.acquire(srcPath(), libPath(), reduceOption, this::analyze);
+        final Hierarchy hierarchy = snapshot == null ? new Hierarchy() : snapshot.hierarchy;
 
         Pair<Set<Integer>, Boolean> result;
 
-        if (this.reduceOption == JReduceWorkingEnv.methodRemoval) {
-            result = runReductionMethod(hierarchy, srcPath(), targetPath());
-        } else {
-            result = runReductionClass(hierarchy, srcPath(), targetPath());
+        try {
+            if (snapshot != null) {
+                try {
+                    result = runReductionSnapshot(snapshot, targetPath());
+                } finally {
+                    snapshots.release(snapshot);
+                }
+            } else if (fixedPoint) {
+                currentTargetPath = targetPath();
+                result = runReductionFixedPoint(hierarchy);
+            } else if (this.reduceOption == JReduceWorkingEnv.methodRemoval) {
+                result = runReductionMethod(hierarchy, srcPath(), targetPath());
+            } else {
+                result = runReductionClass(hierarchy, srcPath(), targetPath());
+            }
+        } finally {
+            removeWorkspaces();
         }
         final String pair = result.getLeft().size() + "/" + hierarchy.reductionPoints.size();
         finalProgressions = result.getLeft().toString();
@@ -178,21 +317,49 @@ public class JReduceWorkingEnv {
         return pair;
     }
 
-    private Pair<Set<Integer>, Boolean> runReductionMethod(
-            final Hierarchy hierarchy, final Path source, final Path target)
+    // The analysis of `reduceOption`
+    private void analyze(final Hierarchy hierarchy, final ClassPool pool) throws IOException {
+        if (this.reduceOption == JReduceWorkingEnv.methodRemoval) {
+            analyzeMethod(hierarchy, pool);
+        } else {
+            analyzeClass(hierarchy, pool);
+        }
+    }
+
+    /**
+     * Reduce the classes of a shared analysis, written to `target`
+     */
+    private Pair<Set<Integer>, Boolean> runReductionSnapshot(final AnalysisSnapshot snapshot, final Path target)
             throws IOException, InterruptedException {
-        final ClassAnalyzeOptions options = new ClassAnalyzeOptions();
-        final ClassPool pool = new ClassPool(source, libPath(), target);
+        final ClassPool pool = snapshot.fork(srcPath(), libPath(), target);
         currentTargetPath = target;
 
+        final JReducePredicate JReducePredicate = createPredicate(
+                this.reduceOption == JReduceWorkingEnv.methodRemoval && GlobalConfig.debugPredicateDiff);
+
+        return runReductionElement(snapshot.getReductionPoints(), snapshot.hierarchy, pool, JReducePredicate);
+    }
+
+    private void analyzeMethod(final Hierarchy hierarchy, final ClassPool pool) throws IOException {
+        final ClassAnalyzeOptions options = new ClassAnalyzeOptions();
+
         // read lib & classes
         pool.readLibs(hierarchy);
         pool.readClasses(hierarchy, options);
 
         // post-compute the edges
         hierarchy.addEdges();
+    }
+
+    private Pair<Set<Integer>, Boolean> runReductionMethod(
+            final Hierarchy hierarchy, final Path source, final Path target)
+            throws IOException, InterruptedException {
+        final ClassPool pool = new ClassPool(source, libPath(), target);
+        currentTargetPath = target;
 
-        final JReducePredicate JReducePredicate = new JReducePredicate(this, decompiler, GlobalConfig.debugPredicateDiff);
+        analyzeMethod(hierarchy, pool);
+
+        final JReducePredicate JReducePredicate = createPredicate(GlobalConfig.debugPredicateDiff);
 
         final List<Integer> list = new ArrayList<>();
         for (int i = 0; i < hierarchy.reductionPoints.size(); ++i) {
@@ -215,7 +382,7 @@ public class JReduceWorkingEnv {
         // read classes only
         pool.readClasses(hierarchy, options);
 
-        final JReducePredicate JReducePredicate = new JReducePredicate(this, decompiler, GlobalConfig.debugPredicateDiff);
+        final JReducePredicate JReducePredicate = createPredicate(GlobalConfig.debugPredicateDiff);
 
         final List<Integer> list = new ArrayList<>();
         for (int i = 0; i < hierarchy.reductionPoints.size(); ++i) {
@@ -225,14 +392,8 @@ public class JReduceWorkingEnv {
         return runReductionElement(list, hierarchy, pool, JReducePredicate);
     }
 
-    private Pair<Set<Integer>, Boolean> runReductionClass(
-            final Hierarchy hierarchy, final Path source, final Path target)
-            throws IOException, InterruptedException {
-
+    private void analyzeClass(final Hierarchy hierarchy, final ClassPool pool) throws IOException {
         final ClassAnalyzeOptions startOption = new ClassAnalyzeOptions();
-        final ClassPool pool = new ClassPool(source, libPath(), target);
-        currentTargetPath = target;
-
         startOption.doReduction = false;
         startOption.checkClassAdapter = false;
         startOption.addMethodRemoval = false;
@@ -249,12 +410,20 @@ public class JReduceWorkingEnv {
         // FIXME: this is broken since we need all constraints from all methods
         // options.addParentCollapsing = true;
         options.addParamSubtyping = true;
-        currentTargetPath = target;
 
         // read classes again
         pool.readClasses(hierarchy, options);
+    }
+
+    private Pair<Set<Integer>, Boolean> runReductionClass(
+            final Hierarchy hierarchy, final Path source, final Path target)
+            throws IOException, InterruptedException {
+        final ClassPool pool = new ClassPool(source, libPath(), target);
+        currentTargetPath = target;
+
+        analyzeClass(hierarchy, pool);
 
-        final JReducePredicate JReducePredicate = new JReducePredicate(this, decompiler, false);
+        final JReducePredicate JReducePredicate = createPredicate(false);
 
         final List<Integer> list = new ArrayList<>();
         for (int i = 0; i < hierarchy.reductionPoints.size(); ++i) {
@@ -264,24 +433,6 @@ public class JReduceWorkingEnv {
         return runReductionElement(list, hierarchy, pool, JReducePredicate);
     }
 
-    private Pair<Set<Integer>, Boolean> runReductionElement(
-            final List<Integer> elements,
-            final Hierarchy hierarchy,
-            final ClassPool pool, final JReducePredicate JReducePredicate)
-            throws IOException, InterruptedException {
-        final BinaryPolicy<Integer> policy = new BinaryPolicy<>(
-                hierarchy, elements, BinaryPolicy.ID_AGGREGATOR);
-        policy.runReduction(pool, JReducePredicate);
-
-        final boolean isValidFinal = policy.runFinal(pool, JReducePredicate);
-        if (GlobalConfig.debug) {
-            GlobalConfig.println("Element Level => (" + isValidFinal + ") "
-                    + policy.getProgressions().size() + "/" + hierarchy.reductionPoints.size());
-        }
-
-        return ImmutablePair.of(policy.getProgressions(), isValidFinal);
-    }
-
     private Pair<Set<Integer>, Boolean> doNotRunReduction() {
         return ImmutablePair.of(new TreeSet<>(), true);
     }
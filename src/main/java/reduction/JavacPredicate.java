@@ -0,0 +1,540 @@
+package reduction;
+
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+import helper.GlobalConfig;
+import helper.HashUtils;
+
+import javax.tools.*;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * JReducePredicate compiling the decompiled sources with an in-process javac instead of `compile.sh`
+ */
+public class JavacPredicate extends JReducePredicate {
+    /**
+     * Keeps the generated classes in memory instead of writing the `classes` folder
+     */
+    static class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+        final Map<String, ByteArrayOutputStream> classes;
+
+        MemoryFileManager(final StandardJavaFileManager fileManager) {
+            super(fileManager);
+            this.classes = new HashMap<>();
+        }
+
+        StandardJavaFileManager getStandardManager() {
+            return fileManager;
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(final Location location, final String className,
+                                                   final JavaFileObject.Kind kind, final FileObject sibling) {
+            final URI uri = URI.create("mem:///" + className.replace('.', '/') + kind.extension);
+            return new SimpleJavaFileObject(uri, kind) {
+                @Override
+                public OutputStream openOutputStream() {
+                    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    classes.put(className, bytes);
+                    return bytes;
+                }
+            };
+        }
+    }
+
+    /**
+     * What the last compilation found out about each source, the base of an incremental compilation
+     */
+    static class CompileState {
+        // source => hash of its content when it was compiled
+        final Map<String, String> hashes = new HashMap<>();
+        final Map<String, List<String>> errors = new HashMap<>();
+        // sources with syntax errors, javac stops before checking any other file then
+        final Set<String> parseErrors = new HashSet<>();
+
+        void forget(final Collection<String> files) {
+            for (final String file: new ArrayList<>(files)) {
+                hashes.remove(file);
+                errors.remove(file);
+            }
+            parseErrors.clear();
+        }
+
+        void record(final Collection<String> files, final Map<String, String> fileHashes,
+                    final Map<String, List<String>> fileErrors) {
+            for (final String file: files) {
+                hashes.put(file, fileHashes.get(file));
+                errors.put(file, fileErrors.getOrDefault(file, Collections.emptyList()));
+            }
+        }
+    }
+
+    static final Pattern ERROR_FILE = Pattern.compile("^([^.]*.java):");
+    static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_$][A-Za-z0-9_$]*");
+    static final Pattern TYPE_DECLARATION = Pattern.compile("\\b(?:class|interface|enum)\\s+([A-Za-z_$][A-Za-z0-9_$]*)");
+
+    private final JavaCompiler compiler;
+    private final Map<String, Integer> expectedErrors;
+    private MemoryFileManager fileManager;
+
+    // only recompile the sources which changed and their dependents, see compileIncremental
+    private boolean incremental = false;
+    private final CompileState state = new CompileState();
+    // hash of a source => the identifiers in it, and the types it declares
+    private final Map<String, Set<String>> identifierCache = new HashMap<>();
+    private final Map<String, Set<String>> declarationCache = new HashMap<>();
+
+    public JavacPredicate(final Path workingFolder, final String decompiler,
+                          final Path predicatePath, final Path compilePath, final Path sourcePath,
+                          final Path libPath, final Path expectationPath,
+                          final boolean saveDiff) throws IOException {
+        super(workingFolder, decompiler, predicatePath, compilePath, sourcePath, libPath, expectationPath, saveDiff);
+        this.compiler = ToolProvider.getSystemJavaCompiler();
+        if (this.compiler == null) {
+            throw new IllegalStateException("In-process compilation requires a JDK");
+        }
+        this.expectedErrors = new ExpectationMatcher(expectation).expectedCounts();
+    }
+
+    public JavacPredicate(final JReduceWorkingEnv env, final String decompiler, final boolean saveDiff) throws IOException {
+        this(env.workingFolder, decompiler, env.targetPredicatePath(), env.targetCompilePath(),
+                env.currentTargetPath(), env.libPath(), env.expectationPath(), saveDiff);
+    }
+
+    public void setIncremental(final boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    // The library classpath is parsed once and reused by every compilation
+    private MemoryFileManager getFileManager() throws IOException {
+        if (fileManager == null) {
+            final StandardJavaFileManager standard =
+                    compiler.getStandardFileManager(null, Locale.ROOT, StandardCharsets.UTF_8);
+            standard.setLocation(StandardLocation.CLASS_PATH, Collections.singletonList(libPath.toFile()));
+            fileManager = new MemoryFileManager(standard);
+        }
+        return fileManager;
+    }
+
+    static List<Path> listSources(final Path srcFolder) throws IOException {
+        if (!Files.isDirectory(srcFolder)) {
+            return Collections.emptyList();
+        }
+        try (final Stream<Path> files = Files.walk(srcFolder)) {
+            return files.filter(Files::isRegularFile)
+                    .filter((f) -> f.toString().endsWith(".java"))
+                    .sorted(Comparator.comparing((f) -> srcFolder.relativize(f).toString()))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    static List<String> compileOptions() {
+        final String maxErrors = System.getenv().getOrDefault("MAX_ERRORS", "1000");
+        return Arrays.asList("-encoding", "utf8", "-Xmaxwarns", "0", "-Xmaxerrs", maxErrors, "-nowarn");
+    }
+
+    /**
+     * Turns javac's diagnostics into compile.sh error lines as they are reported.
+     * The errors arrive unsorted, so they are checked against the expected lines as a multiset.
+     */
+    static class ErrorCollector implements DiagnosticListener<JavaFileObject> {
+        final Path srcFolder;
+        // expected error lines which did not show up yet, null to collect everything
+        final Map<String, Integer> remaining;
+        // only the errors of these files are collected, null for all of them
+        final Set<String> units;
+        final List<String> errorLines;
+        // errors of the files outside `units`, and errors without a file
+        int ignoredErrors;
+        // the first error line which can't be part of the expectation
+        String divergence;
+        boolean success;
+
+        ErrorCollector(final Path srcFolder, final Map<String, Integer> expected, final Set<String> units) {
+            this.srcFolder = srcFolder;
+            this.remaining = expected == null ? null : new HashMap<>(expected);
+            this.units = units;
+            this.errorLines = new ArrayList<>();
+            this.ignoredErrors = 0;
+            this.divergence = null;
+            this.success = false;
+        }
+
+        @Override
+        public void report(final Diagnostic<? extends JavaFileObject> diagnostic) {
+            if (diagnostic.getKind() != Diagnostic.Kind.ERROR) {
+                return;
+            }
+            if (divergence != null) {
+                // javac may go on after swallowing the abort
+                throw new AbortCompile();
+            }
+            if (diagnostic.getSource() == null) {
+                ignoredErrors += 1;
+                return;
+            }
+            final String file = sourceName(diagnostic.getSource());
+            if (units != null && !units.contains(file)) {
+                ignoredErrors += 1;
+                return;
+            }
+            // compile.sh runs javac with LC_ALL=C, and keeps the first line of the message after the file name
+            final String message = diagnostic.getMessage(Locale.ROOT);
+            final int newline = message.indexOf('\n');
+            final String error = file + ": " + (newline == -1 ? message : message.substring(0, newline));
+            if (remaining != null) {
+                final int count = remaining.getOrDefault(error, 0);
+                if (count == 0) {
+                    divergence = "unexpected error: " + error;
+                    throw new AbortCompile();
+                }
+                remaining.put(error, count - 1);
+            }
+            errorLines.add(error);
+        }
+
+        private String sourceName(final JavaFileObject source) {
+            final Path path = Paths.get(source.toUri());
+            final Path file = path.startsWith(srcFolder) ? srcFolder.relativize(path) : path;
+            return file.toString().replace(File.separatorChar, '/');
+        }
+
+        // The error lines by source file
+        Map<String, List<String>> errorsByFile() {
+            final Map<String, List<String>> errors = new HashMap<>();
+            for (final String error: errorLines) {
+                final Matcher m = ERROR_FILE.matcher(error);
+                if (m.find()) {
+                    errors.computeIfAbsent(m.group(1), (k) -> new ArrayList<>()).add(error);
+                }
+            }
+            return errors;
+        }
+
+        // The same errors, in any order
+        boolean sameErrors(final ErrorCollector other) {
+            final List<String> lines = new ArrayList<>(errorLines);
+            final List<String> otherLines = new ArrayList<>(other.errorLines);
+            Collections.sort(lines);
+            Collections.sort(otherLines);
+            return ignoredErrors == other.ignoredErrors && lines.equals(otherLines);
+        }
+    }
+
+    // Unwinds javac once its output can't match anymore
+    static class AbortCompile extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        AbortCompile() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Compile `sources`, and collect the error lines the way `compile.sh` reports them (unsorted).
+     * The compilation stops at the first error line which is not expected.
+     * @return the collected errors, or null if there is nothing to compile
+     */
+    ErrorCollector compile(final Path srcFolder, final List<Path> sources) throws IOException {
+        if (sources.isEmpty()) {
+            return null;
+        }
+        // all the errors are needed for the difference, otherwise javac stops at the first unexpected one
+        final ErrorCollector out = new ErrorCollector(srcFolder, saveDiff ? null : expectedErrors, null);
+        runJavac(out, sources, null, compileOptions());
+        return out;
+    }
+
+    /**
+     * @param sourcePath where javac looks up the types which are not in `sources`, null for the class path
+     */
+    private void runJavac(final ErrorCollector out, final List<Path> sources, final Path sourcePath,
+                          final List<String> options) throws IOException {
+        final MemoryFileManager fm = getFileManager();
+        fm.classes.clear();
+        fm.getStandardManager().setLocation(StandardLocation.SOURCE_PATH,
+                sourcePath == null ? null : Collections.singletonList(sourcePath.toFile()));
+
+        final Iterable<? extends JavaFileObject> units =
+                fm.getStandardManager().getJavaFileObjectsFromFiles(
+                        sources.stream().map(Path::toFile).collect(Collectors.toList()));
+        // the diagnostics go to `out`, the other messages (notes) are dropped
+        final JavacTask task = (JavacTask) compiler.getTask(new StringWriter(), fm, out, options, null, units);
+        final boolean[] interrupted = {false};
+        // javac can't be killed like compile.sh, it is stopped before the next step of a compilation unit instead
+        task.addTaskListener(new TaskListener() {
+            @Override
+            public void started(final TaskEvent e) {
+                try {
+                    checkInterrupt();
+                } catch (final PredicateTimeoutException | CancellationException ex) {
+                    interrupted[0] = true;
+                    throw new AbortCompile();
+                }
+            }
+
+            @Override
+            public void finished(final TaskEvent e) {
+            }
+        });
+        try {
+            out.success = task.call();
+        } catch (final AbortCompile ex) {
+            // divergence is set
+        } catch (final RuntimeException ex) {
+            // javac wraps the exceptions of the listener
+            if (out.divergence == null) {
+                // javac crashed, compile.sh fails as well
+                out.divergence = "compile crashed: " + ex;
+            }
+        }
+        if (interrupted[0]) {
+            checkInterrupt();
+        }
+    }
+
+    /**
+     * Javac stops after the parsing if a source has a syntax error, so its errors are then the ones of a
+     * compilation which only parses & enters the sources (-proc:only). The files with errors are taken for
+     * files with syntax errors if that is the case, which may include other errors of the enter phase.
+     * @param compiled the errors of the compilation of `sources`
+     * @return the files which may have syntax errors
+     */
+    private Set<String> findParseErrors(final ErrorCollector compiled, final List<Path> sources,
+                                        final Path sourcePath, final List<String> options) throws IOException {
+        if (compiled.success || compiled.divergence != null) {
+            return Collections.emptySet();
+        }
+        final ErrorCollector parsed = new ErrorCollector(compiled.srcFolder, null, compiled.units);
+        final List<String> parseOptions = new ArrayList<>(options);
+        parseOptions.add("-proc:only");
+        runJavac(parsed, sources, sourcePath, parseOptions);
+        if (parsed.divergence != null || parsed.sameErrors(compiled)) {
+            return parsed.errorsByFile().keySet();
+        }
+        return Collections.emptySet();
+    }
+
+    /**
+     * Recompile the sources which changed since the last compilation, together with the sources which may
+     * depend on them, i.e. mention the types they declare (transitively). The members inherited from a changed
+     * type, or imported statically from it, are only reached through a chain of sources naming the next one.
+     * The errors of the other sources are reused.
+     * The result is the one of a full compilation, which is run instead when that can't be guaranteed:
+     * syntax errors stop javac before the other files are checked, and -Xmaxerrs truncates the errors.
+     */
+    ErrorCollector compileIncremental(final Path srcFolder, final List<Path> sources) throws IOException {
+        if (sources.isEmpty()) {
+            return null;
+        }
+        final Map<String, Path> files = new TreeMap<>();
+        final Map<String, String> hashes = new HashMap<>();
+        for (final Path source: sources) {
+            final String file = srcFolder.relativize(source).toString().replace(File.separatorChar, '/');
+            files.put(file, source);
+            hashes.put(file, HashUtils.hashFile(source));
+            // the declarations of this version are needed once it changes
+            scan(source, hashes.get(file));
+        }
+
+        final Set<String> units = new TreeSet<>();
+        if (state.parseErrors.isEmpty()) {
+            final Set<String> changed = new HashSet<>();
+            for (final String file: files.keySet()) {
+                if (!hashes.get(file).equals(state.hashes.get(file))) {
+                    changed.add(file);
+                }
+            }
+            for (final String file: state.hashes.keySet()) {
+                if (!files.containsKey(file)) {
+                    changed.add(file);
+                }
+            }
+            units.addAll(dependents(changed, files, hashes));
+        }
+        if (state.parseErrors.isEmpty() && units.size() < files.size()) {
+            final ErrorCollector out = new ErrorCollector(srcFolder, null, units);
+            // the errors of the untouched files have to be expected already
+            final Map<String, Integer> remaining = new HashMap<>(expectedErrors);
+            for (final String file: files.keySet()) {
+                if (units.contains(file)) {
+                    continue;
+                }
+                for (final String error: state.errors.getOrDefault(file, Collections.emptyList())) {
+                    final int count = remaining.getOrDefault(error, 0);
+                    if (count == 0 && out.divergence == null) {
+                        out.divergence = "unexpected error: " + error;
+                    }
+                    remaining.put(error, count - 1);
+                    out.errorLines.add(error);
+                }
+            }
+            // the units stay dirty until they are compiled
+            state.forget(units);
+            if (out.divergence != null && !saveDiff) {
+                return out;
+            }
+
+            final List<Path> unitSources = units.stream().map(files::get).collect(Collectors.toList());
+            final List<String> options = new ArrayList<>(compileOptions());
+            options.set(options.indexOf("-Xmaxerrs") + 1, String.valueOf(Integer.MAX_VALUE));
+            final ErrorCollector unitOut = new ErrorCollector(srcFolder, null, units);
+            Set<String> parseErrors = Collections.emptySet();
+            if (unitSources.isEmpty()) {
+                // only removed sources, which nothing mentions
+                unitOut.success = true;
+            } else {
+                runJavac(unitOut, unitSources, srcFolder, options);
+                parseErrors = findParseErrors(unitOut, unitSources, srcFolder, options);
+            }
+            if (unitOut.divergence == null && parseErrors.isEmpty()
+                    && out.errorLines.size() + unitOut.errorLines.size() < maxErrors()) {
+                state.record(units, hashes, unitOut.errorsByFile());
+                out.errorLines.addAll(unitOut.errorLines);
+                out.success = out.errorLines.isEmpty() && unitOut.success;
+                if (GlobalConfig.debugPredicate)
+                    GlobalConfig.println("Recompiled " + units.size() + "/" + files.size() + " sources");
+                return out;
+            }
+        }
+
+        // full compilation, which is the base of the next incremental one
+        state.forget(state.hashes.keySet());
+        final ErrorCollector out = new ErrorCollector(srcFolder, null, null);
+        runJavac(out, sources, null, compileOptions());
+        if (out.divergence == null) {
+            final Set<String> parseErrors = findParseErrors(out, sources, null, compileOptions());
+            state.record(files.keySet(), hashes, out.errorsByFile());
+            state.parseErrors.addAll(parseErrors);
+        }
+        return out;
+    }
+
+    // The sources mentioning the types of `changed` (by their simple name), transitively
+    private Set<String> dependents(final Set<String> changed, final Map<String, Path> files,
+                                   final Map<String, String> hashes) throws IOException {
+        final Set<String> result = new TreeSet<>();
+        final Deque<String> names = new ArrayDeque<>();
+        for (final String file: changed) {
+            if (files.containsKey(file)) {
+                result.add(file);
+            }
+            names.addAll(declaredTypes(file, hashes));
+        }
+        final Set<String> visited = new HashSet<>();
+        while (!names.isEmpty()) {
+            final String name = names.poll();
+            if (!visited.add(name)) {
+                continue;
+            }
+            for (final String file: files.keySet()) {
+                if (!result.contains(file) && identifiers(files.get(file), hashes.get(file)).contains(name)) {
+                    result.add(file);
+                    names.addAll(declaredTypes(file, hashes));
+                }
+            }
+        }
+        return result;
+    }
+
+    static String simpleName(final String file) {
+        final String name = file.substring(file.lastIndexOf('/') + 1);
+        return name.substring(0, name.length() - ".java".length());
+    }
+
+    // A source may declare other top-level types than the one it is named after, and nested ones
+    private Set<String> declaredTypes(final String file, final Map<String, String> hashes) {
+        final Set<String> names = new HashSet<>();
+        names.add(simpleName(file));
+        // the current version of the source, and the one which was compiled
+        for (final String hash: Arrays.asList(hashes.get(file), state.hashes.get(file))) {
+            if (hash != null && declarationCache.containsKey(hash)) {
+                names.addAll(declarationCache.get(hash));
+            }
+        }
+        return names;
+    }
+
+    private Set<String> identifiers(final Path source, final String hash) throws IOException {
+        scan(source, hash);
+        return identifierCache.get(hash);
+    }
+
+    private void scan(final Path source, final String hash) throws IOException {
+        if (identifierCache.containsKey(hash)) {
+            return;
+        }
+        final String content = new String(Files.readAllBytes(source), StandardCharsets.UTF_8);
+        final Set<String> identifiers = new HashSet<>();
+        final Matcher m = IDENTIFIER.matcher(content);
+        while (m.find()) {
+            identifiers.add(m.group());
+        }
+        final Set<String> declarations = new HashSet<>();
+        final Matcher d = TYPE_DECLARATION.matcher(content);
+        while (d.find()) {
+            declarations.add(d.group(1));
+        }
+        identifierCache.put(hash, identifiers);
+        declarationCache.put(hash, declarations);
+    }
+
+    static int maxErrors() {
+        return Integer.parseInt(System.getenv().getOrDefault("MAX_ERRORS", "1000"));
+    }
+
+    @Override
+    public boolean runCompile(final String srcPath) throws IOException, InterruptedException {
+        if (srcPath == null) {
+            return false;
+        }
+        final Path srcFolder = workingFolder.resolve(srcPath).resolve("src").toAbsolutePath();
+        final List<Path> sources = listSources(srcFolder);
+        final ErrorCollector errors = incremental
+                ? compileIncremental(srcFolder, sources)
+                : compile(srcFolder, sources);
+        if (errors == null) {
+            return false;
+        }
+
+        String divergence = errors.divergence;
+        if (divergence == null && errors.success) {
+            divergence = "compiled without errors";
+        }
+        Collections.sort(errors.errorLines);
+        if (divergence == null) {
+            final ExpectationMatcher matcher = new ExpectationMatcher(expectation);
+            for (final String line: errors.errorLines) {
+                if (!matcher.accept(line)) {
+                    break;
+                }
+            }
+            if (!matcher.matches()) {
+                divergence = matcher.getDivergence();
+            }
+        }
+        if (saveDiff) {
+            saveDifference(errors.errorLines);
+        }
+        if (GlobalConfig.debugPredicate) {
+            GlobalConfig.println("Compile output: " + (divergence == null ? "matches the expectation" : divergence));
+        }
+        return divergence == null;
+    }
+}
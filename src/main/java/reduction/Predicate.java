@@ -4,4 +4,30 @@ import java.io.IOException;
 
 public interface Predicate {
     boolean runPredicate() throws IOException, InterruptedException ;
+
+    /**
+     * Two predicates with the same identity give the same outcome on the same classes
+     */
+    default String getIdentity() throws IOException {
+        return getClass().getName();
+    }
+
+    /**
+     * Abort the run in progress from another thread, e.g. once its outcome is no longer needed, and the runs
+     * starting until `clearCancel`: a cancellation racing with the start of a run is not lost
+     */
+    default void cancel() {
+    }
+
+    /**
+     * Let the next runs go, once the cancelled ones stopped
+     */
+    default void clearCancel() {
+    }
+
+    /**
+     * Release long-lived resources, e.g. a predicate server
+     */
+    default void close() throws IOException {
+    }
 }
@@ -0,0 +1,80 @@
+package reduction;
+
+import helper.HashUtils;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Persistent predicate outcomes, keyed by the predicate identity & the hash of the written classes
+ */
+public class PredicateCache {
+    public static class Entry {
+        public final boolean outcome;
+        public final long duration;
+
+        public Entry(final boolean outcome, final long duration) {
+            this.outcome = outcome;
+            this.duration = duration;
+        }
+    }
+
+    private final Path cachePath;
+    private final Map<String, Entry> entries;
+    private int hits;
+
+    public PredicateCache(final Path cachePath) throws IOException {
+        this.cachePath = cachePath;
+        this.entries = new HashMap<>();
+        this.hits = 0;
+        if (Files.isRegularFile(cachePath)) {
+            try (final Reader reader = new FileReader(cachePath.toFile());
+                 final CSVParser parser = new CSVParser(reader, CSVFormat.EXCEL)) {
+                for (final CSVRecord record : parser) {
+                    // skip records cut by an interrupted run
+                    if (record.size() == 3) {
+                        entries.put(record.get(0),
+                                new Entry(Boolean.parseBoolean(record.get(1)), Long.parseLong(record.get(2))));
+                    }
+                }
+            }
+        }
+    }
+
+    public static String key(final Predicate predicate, final String classDigest) throws IOException {
+        return HashUtils.hash(predicate.getIdentity()) + ":" + classDigest;
+    }
+
+    public synchronized Entry get(final String key) {
+        final Entry entry = entries.get(key);
+        if (entry != null) {
+            hits += 1;
+        }
+        return entry;
+    }
+
+    public synchronized void put(final String key, final boolean outcome, final long duration) throws IOException {
+        entries.put(key, new Entry(outcome, duration));
+        try (final CSVPrinter printer = new CSVPrinter(new FileWriter(cachePath.toFile(), true), CSVFormat.EXCEL)) {
+            printer.printRecord(key, outcome, duration);
+        }
+    }
+
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+}
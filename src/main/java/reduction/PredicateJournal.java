@@ -0,0 +1,238 @@
+package reduction;
+
+import helper.GlobalConfig;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Every predicate evaluation of a reduction, appended to a text file so that the search can be replayed
+ * offline (see `replay`) without running any predicate.
+ *
+ * A session starts with `# <number of elements>`, one per search (a reduction, or a level or component of one),
+ * and is only written once it has an evaluation. Each evaluation is a line
+ * `<1|0> <duration ms> <digest of the written classes|-> <closure>`, the closure being the positions of its
+ * elements in the initial sorted space, as ranges (`0-3,7,9-10`).
+ */
+public class PredicateJournal {
+    public static class Evaluation {
+        public final BitSet closure;
+        public final boolean outcome;
+        public final long duration;
+        public final String digest;
+
+        public Evaluation(final BitSet closure, final boolean outcome, final long duration, final String digest) {
+            this.closure = closure;
+            this.outcome = outcome;
+            this.duration = duration;
+            this.digest = digest;
+        }
+    }
+
+    // null when replaying
+    private final Path journalPath;
+    public final int size;
+    private final Map<BitSet, Evaluation> evaluations;
+    private int replayed;
+    private int misses;
+    // whether the header of the session is written
+    private boolean started;
+    // the lines of a concurrent session until `flush`, null when they are appended right away
+    private final List<String> pending;
+
+    private PredicateJournal(final Path journalPath, final int size, final boolean buffered) {
+        this.journalPath = journalPath;
+        this.size = size;
+        this.evaluations = new LinkedHashMap<>();
+        this.replayed = 0;
+        this.misses = 0;
+        this.started = false;
+        this.pending = buffered ? new ArrayList<>() : null;
+    }
+
+    /**
+     * Start a new session at the end of `journalPath`
+     * @param size number of elements of the sorted space
+     */
+    public static PredicateJournal record(final Path journalPath, final int size) {
+        return new PredicateJournal(journalPath, size, false);
+    }
+
+    // A new session in the same journal, for a search following this one
+    public PredicateJournal session(final int size) {
+        return new PredicateJournal(journalPath, size, false);
+    }
+
+    /**
+     * A new session in the same journal for a search running along with others, e.g. a component of
+     * ComponentPolicy: it is written as a whole by `flush`, and lost if the reduction stops before
+     */
+    public PredicateJournal concurrentSession(final int size) {
+        return new PredicateJournal(journalPath, size, true);
+    }
+
+    // All the sessions of a journal, to be replayed
+    public static List<PredicateJournal> load(final Path journalPath) throws IOException {
+        final List<PredicateJournal> sessions = new ArrayList<>();
+        try (final BufferedReader reader = new BufferedReader(new FileReader(journalPath.toFile()))) {
+            PredicateJournal session = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("# ")) {
+                    session = new PredicateJournal(null, Integer.parseInt(line.substring(2).trim()), false);
+                    sessions.add(session);
+                    continue;
+                }
+                final String[] fields = line.split(" ", -1);
+                // skip lines cut by an interrupted run
+                if (session == null || fields.length != 4) {
+                    continue;
+                }
+                final BitSet closure = decode(fields[3]);
+                session.evaluations.put(closure, new Evaluation(closure, fields[0].equals("1"),
+                        Long.parseLong(fields[1]), fields[2].equals("-") ? null : fields[2]));
+            }
+        }
+        return sessions;
+    }
+
+    public boolean isReplay() {
+        return journalPath == null;
+    }
+
+    public synchronized void append(final BitSet closure, final boolean outcome, final long duration,
+                                    final String digest) throws IOException {
+        evaluations.put(closure, new Evaluation(closure, outcome, duration, digest));
+        final String line = (outcome ? "1" : "0") + " " + duration + " " + (digest == null ? "-" : digest)
+                + " " + encode(closure) + "\n";
+        if (pending != null) {
+            pending.add(line);
+        } else {
+            write(Collections.singletonList(line));
+        }
+    }
+
+    // Write the evaluations of a concurrent session
+    public synchronized void flush() throws IOException {
+        if (pending != null && !pending.isEmpty()) {
+            write(pending);
+            pending.clear();
+        }
+    }
+
+    private void write(final List<String> lines) throws IOException {
+        // the sessions of a journal share its file
+        synchronized (PredicateJournal.class) {
+            try (final Writer writer = new FileWriter(journalPath.toFile(), true)) {
+                if (!started) {
+                    writer.write("# " + size + "\n");
+                    started = true;
+                }
+                for (final String line: lines) {
+                    writer.write(line);
+                }
+            }
+        }
+    }
+
+    /**
+     * The recorded outcome of `closure`. A closure which was never evaluated is decided by monotonicity:
+     * it passes if it contains a passing closure, and fails otherwise.
+     */
+    public synchronized boolean replay(final BitSet closure) {
+        replayed += 1;
+        final Evaluation evaluation = evaluations.get(closure);
+        if (evaluation != null) {
+            return evaluation.outcome;
+        }
+        misses += 1;
+        for (final Evaluation other: evaluations.values()) {
+            final BitSet missing = (BitSet) other.closure.clone();
+            missing.andNot(closure);
+            if (other.outcome && missing.isEmpty()) {
+                return true;
+            }
+        }
+        if (GlobalConfig.debugPredicate)
+            GlobalConfig.println("\tNot in the journal: " + encode(closure));
+        return false;
+    }
+
+    public synchronized int getReplayed() {
+        return replayed;
+    }
+
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    // Sum of the recorded predicate durations, what the replay saves
+    public synchronized long getRecordedDuration() {
+        return evaluations.values().stream().mapToLong((e) -> e.duration).sum();
+    }
+
+    static String encode(final BitSet closure) {
+        final StringBuilder sb = new StringBuilder();
+        int start = closure.nextSetBit(0);
+        while (start >= 0) {
+            final int end = closure.nextClearBit(start) - 1;
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(start);
+            if (end > start) {
+                sb.append('-').append(end);
+            }
+            start = closure.nextSetBit(end + 1);
+        }
+        return sb.toString();
+    }
+
+    static BitSet decode(final String ranges) {
+        final BitSet closure = new BitSet();
+        if (ranges.isEmpty()) {
+            return closure;
+        }
+        for (final String range: ranges.split(",")) {
+            final int dash = range.indexOf('-');
+            if (dash == -1) {
+                closure.set(Integer.parseInt(range));
+            } else {
+                closure.set(Integer.parseInt(range.substring(0, dash)), Integer.parseInt(range.substring(dash + 1)) + 1);
+            }
+        }
+        return closure;
+    }
+
+    /**
+     * Run the reduction of every session of `journalPath` again, answering the predicate from the journal
+     * @param strategy may differ from the recorded one, the closures it did not test are decided by monotonicity
+     */
+    public static void replay(final Path journalPath, final String strategy) throws IOException, InterruptedException {
+        final List<PredicateJournal> sessions = load(journalPath);
+        for (int i = 0; i < sessions.size(); ++i) {
+            final PredicateJournal session = sessions.get(i);
+            final List<Integer> elements = new ArrayList<>();
+            for (int j = 0; j < session.size; ++j) {
+                elements.add(j);
+            }
+            final ReductionStrategy<Integer> policy = ReductionStrategy.create(
+                    strategy, null, elements, BinaryPolicy.ID_AGGREGATOR);
+            policy.setJournal(session);
+            final long startTime = System.currentTimeMillis();
+            policy.runReduction(null, null);
+            final boolean isValidFinal = policy.runFinal(null, null);
+            GlobalConfig.println("Session " + i + " => (" + isValidFinal + ") "
+                    + policy.getProgressions().size() + "/" + session.size
+                    + ", " + session.getReplayed() + " evaluations (" + session.getMisses() + " not recorded)"
+                    + ", " + (System.currentTimeMillis() - startTime) + "ms instead of "
+                    + session.getRecordedDuration() + "ms");
+            GlobalConfig.println(policy.getProgressions().toString());
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package reduction;
+
+import graph.Hierarchy;
+import helper.GlobalConfig;
+import jvm.ClassPool;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Probabilistic delta debugging (ProbDD): each element has a probability of being necessary, learned from the
+ * predicate outcomes. Each run removes the elements least likely to be necessary, as many as maximises the
+ * expected number of removed elements. A failing run raises the probabilities of the elements it tried to
+ * remove (one of them at least is necessary), until single elements are known to be necessary.
+ */
+public class ProbDDPolicy<T extends Comparable<? super T>> extends AbstractPolicy<T> {
+    // prior probability of an element being necessary
+    static final double INITIAL_PROBABILITY = 0.1;
+
+    private final Map<T, Double> probabilities;
+    private int runs;
+
+    public ProbDDPolicy(final Hierarchy hierarchy, final List<T> sortedSpace,
+                        final Function<SortedSet<T>, SortedSet<Integer>> aggregator) {
+        super(hierarchy, sortedSpace, aggregator);
+        this.probabilities = new HashMap<>();
+        for (final T element: sortedSpace) {
+            probabilities.put(element, INITIAL_PROBABILITY);
+        }
+        this.runs = 0;
+    }
+
+    @Override
+    public void runReduction(final ClassPool classPool,
+                             final Predicate predicate) throws IOException, InterruptedException {
+        // if discard all elements and we still preserve the compiler error, just return
+        runs += 1;
+        if (runPredicate(new TreeSet<>(), classPool, predicate)) {
+            progressions = new TreeSet<>();
+            return;
+        }
+
+        final SortedSet<T> current = new TreeSet<>(initialSpace);
+        // `current` always passes, an exhausted budget keeps it
+        while (!overBudget()) {
+            // the elements which may still go, least likely necessary first (stable on the sorted space)
+            final List<T> candidates = new ArrayList<>();
+            for (final T element: initialSpace) {
+                if (current.contains(element) && probabilities.get(element) < 1) {
+                    candidates.add(element);
+                }
+            }
+            if (candidates.isEmpty()) {
+                break;
+            }
+            candidates.sort(Comparator.comparingDouble(probabilities::get));
+
+            // the prefix maximising the expected number of removed elements: |S| * P(no element of S is necessary)
+            double none = 1;
+            double bestGain = 0;
+            double bestNone = 1;
+            int best = 1;
+            for (int i = 0; i < candidates.size(); ++i) {
+                none *= 1 - probabilities.get(candidates.get(i));
+                final double gain = (i + 1) * none;
+                if (gain > bestGain) {
+                    bestGain = gain;
+                    bestNone = none;
+                    best = i + 1;
+                }
+            }
+            final List<T> removed = candidates.subList(0, best);
+
+            final SortedSet<T> closure = new TreeSet<>(current);
+            closure.removeAll(removed);
+            if (GlobalConfig.debug)
+                GlobalConfig.println("\tRemoving " + best + "/" + current.size()
+                        + " elements, expected gain " + String.format("%.2f", bestGain));
+            runs += 1;
+            if (runPredicate(closure, classPool, predicate)) {
+                current.removeAll(removed);
+            } else {
+                // P(e necessary | one of `removed` is necessary)
+                for (final T element: removed) {
+                    final double p = best == 1 ? 1 : probabilities.get(element) / (1 - bestNone);
+                    probabilities.put(element, Math.min(p, 1));
+                }
+            }
+        }
+        progressions = current;
+        if (GlobalConfig.debug)
+            GlobalConfig.println("\tprobdd kept " + current.size() + "/" + initialSpace.size()
+                    + " elements with " + runs + " predicate runs");
+    }
+}
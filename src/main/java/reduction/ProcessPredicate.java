@@ -0,0 +1,149 @@
+package reduction;
+
+import helper.GlobalConfig;
+import helper.ProcessUtils;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A predicate running external processes under a wall-clock limit, which can be cancelled from another thread.
+ * A timed out or cancelled process is killed together with its descendants.
+ */
+public abstract class ProcessPredicate implements Predicate {
+    /**
+     * Thrown by `supervise` when the time limit killed the process
+     */
+    public static class PredicateTimeoutException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public PredicateTimeoutException(final String message) {
+            super(message);
+        }
+    }
+
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor((r) -> {
+        final Thread thread = new Thread(r, "predicate-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // wall-clock limit of a predicate run (all of its processes) in milliseconds, 0 means no limit
+    protected long timeout = 0;
+    // the outcome of a run which exceeded the limit
+    protected boolean timeoutAsPass = false;
+
+    private final Set<Process> running = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled = false;
+    private long deadline = 0;
+
+    public void setTimeout(final long timeout, final boolean timeoutAsPass) {
+        this.timeout = timeout;
+        this.timeoutAsPass = timeoutAsPass;
+    }
+
+    // part of getIdentity, a different limit may give a different outcome
+    protected String timeoutIdentity() {
+        return timeout <= 0 ? "" : ":timeout=" + timeout + ":" + timeoutAsPass;
+    }
+
+    /**
+     * Kill the processes of the run in progress, which then throws a CancellationException, and of the runs
+     * starting until `clearCancel`
+     */
+    @Override
+    public void cancel() {
+        cancelled = true;
+        for (final Process process: running) {
+            ProcessUtils.destroyTree(process);
+        }
+    }
+
+    @Override
+    public void clearCancel() {
+        cancelled = false;
+    }
+
+    // Called when a new run starts, a cancellation issued before still applies to it
+    protected void beginRun() {
+        deadline = System.currentTimeMillis() + timeout;
+    }
+
+    /**
+     * For the work done in-process, which can't be killed: called between its steps, throws once the run is
+     * cancelled or out of time, as `supervise` does
+     */
+    protected void checkInterrupt() throws PredicateTimeoutException {
+        if (cancelled) {
+            throw new CancellationException("Predicate cancelled");
+        }
+        if (timeout > 0 && System.currentTimeMillis() >= deadline) {
+            throw new PredicateTimeoutException("Predicate timed out after " + timeout + "ms");
+        }
+    }
+
+    protected boolean timeoutOutcome(final PredicateTimeoutException ex) {
+        if (GlobalConfig.debugPredicate)
+            GlobalConfig.println(ex.getMessage() + ", counted as " + (timeoutAsPass ? "pass" : "fail"));
+        return timeoutAsPass;
+    }
+
+    /**
+     * Run `body` (which consumes the output of `process`) while a watchdog enforces the time limit
+     * @param destroy also kill the process once `body` returns
+     */
+    protected <T> T supervise(final Process process, final Callable<T> body, final boolean destroy)
+            throws IOException, InterruptedException {
+        final AtomicBoolean timedOut = new AtomicBoolean(false);
+        running.add(process);
+        ScheduledFuture<?> watchdog = null;
+        boolean interrupted = false;
+        try {
+            if (cancelled) {
+                ProcessUtils.destroyTree(process);
+            } else if (timeout > 0) {
+                watchdog = WATCHDOG.schedule(() -> {
+                    timedOut.set(true);
+                    ProcessUtils.destroyTree(process);
+                }, Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            }
+            T result;
+            try {
+                result = body.call();
+            } catch (final IOException | InterruptedException | RuntimeException e) {
+                interrupted = e instanceof InterruptedException;
+                if (!timedOut.get() && !cancelled) {
+                    throw e;
+                }
+                result = null;
+            } catch (final Exception e) {
+                throw new IllegalStateException(e);
+            }
+            if (timedOut.get()) {
+                throw new PredicateTimeoutException("Predicate timed out after " + timeout + "ms");
+            }
+            if (cancelled) {
+                throw new CancellationException("Predicate cancelled");
+            }
+            return result;
+        } finally {
+            if (watchdog != null) {
+                watchdog.cancel(false);
+            }
+            running.remove(process);
+            // destroyTree waits for `pgrep` & `kill`, which a pending interruption would cut short
+            final boolean pending = Thread.interrupted();
+            if (interrupted || pending) {
+                // e.g. by the time limit of a batch job, the descendants must not outlive the run
+                ProcessUtils.destroyTree(process);
+            } else if (destroy) {
+                process.destroy();
+            }
+            if (pending) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package reduction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * The reduction points of a class or of a method, reduced as a whole by HierarchicalPolicy.
+ * The blocks of one level are disjoint, so they are ordered by their first reduction point.
+ */
+public class ReductionBlock implements Comparable<ReductionBlock> {
+    public final String name;
+    public final SortedSet<Integer> reductionPoints;
+    // the nested blocks reduced at the next level, e.g. the methods of a class
+    public final List<ReductionBlock> children;
+
+    public ReductionBlock(final String name, final SortedSet<Integer> reductionPoints) {
+        this.name = name;
+        this.reductionPoints = reductionPoints;
+        this.children = new ArrayList<>();
+    }
+
+    /**
+     * @return the block restricted to `elements` (children included), or null if none of its points remains
+     */
+    public ReductionBlock restrict(final SortedSet<Integer> elements) {
+        final SortedSet<Integer> kept = new TreeSet<>(reductionPoints);
+        kept.retainAll(elements);
+        if (kept.isEmpty()) {
+            return null;
+        }
+        final ReductionBlock block = new ReductionBlock(name, kept);
+        for (final ReductionBlock child: children) {
+            final ReductionBlock restricted = child.restrict(elements);
+            if (restricted != null) {
+                block.children.add(restricted);
+            }
+        }
+        return block;
+    }
+
+    @Override
+    public int compareTo(final ReductionBlock other) {
+        return reductionPoints.first().compareTo(other.reductionPoints.first());
+    }
+
+    @Override
+    public String toString() {
+        return name + reductionPoints;
+    }
+}
@@ -0,0 +1,129 @@
+package reduction;
+
+import helper.GlobalConfig;
+import jvm.ClassPool;
+import org.apache.commons.io.FileUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits on the wall-clock time and on the predicate runs of a reduction. Once a limit is reached the strategies
+ * stop and keep their smallest passing closure, which is also copied to `bestFolder` each time it shrinks, so
+ * that an interrupted run still leaves its best result behind.
+ */
+public class ReductionBudget {
+    // under this fraction of a budget left, the search favours the steps which save predicate runs
+    static final double LOW_FRACTION = 0.2;
+
+    private final long startTime;
+    // milliseconds, 0: unbounded
+    private final long timeBudget;
+    // 0: unbounded
+    private final int predicateBudget;
+    private final AtomicInteger predicateRuns;
+
+    // the target folders of the smallest passing closure go in this folder, under their own names
+    private final Path bestFolder;
+    // size of the smallest passing closure of the current step, see newStep
+    private int bestSize;
+
+    public ReductionBudget(final long timeBudget, final int predicateBudget, final Path bestFolder) {
+        this.startTime = System.currentTimeMillis();
+        this.timeBudget = timeBudget;
+        this.predicateBudget = predicateBudget;
+        this.predicateRuns = new AtomicInteger(0);
+        this.bestFolder = bestFolder;
+        this.bestSize = Integer.MAX_VALUE;
+    }
+
+    // Count a run of the predicate, cached & replayed outcomes are free
+    public void countRun() {
+        predicateRuns.incrementAndGet();
+    }
+
+    public int getPredicateRuns() {
+        return predicateRuns.get();
+    }
+
+    // The fraction of the tighter budget which is left
+    public double remaining() {
+        double remaining = 1;
+        if (timeBudget > 0) {
+            remaining = Math.min(remaining, 1 - (double) (System.currentTimeMillis() - startTime) / timeBudget);
+        }
+        if (predicateBudget > 0) {
+            remaining = Math.min(remaining, 1 - (double) predicateRuns.get() / predicateBudget);
+        }
+        return Math.max(remaining, 0);
+    }
+
+    public boolean isExhausted() {
+        return remaining() <= 0;
+    }
+
+    public boolean isLow() {
+        return remaining() < LOW_FRACTION;
+    }
+
+    /**
+     * Start a reduction step: its closures number the points of its own search space, they are only compared
+     * with each other. The best folder keeps the last best closure until the step passes a closure.
+     */
+    public synchronized void newStep() {
+        bestSize = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Keep the classes of a passing closure if it is the smallest of the step so far
+     * @param size number of reduction points kept by the closure
+     * @param targetPath the folders the closure was written to, in the order of `classPool.getOutputPath()`
+     */
+    public synchronized void offer(final int size, final ClassPool classPool, final List<Path> targetPath)
+            throws IOException {
+        if (size >= bestSize) {
+            return;
+        }
+        final List<SortedMap<String, byte[]>> written = new ArrayList<>();
+        for (final Path target: targetPath) {
+            final SortedMap<String, byte[]> classes = classPool.getWrittenClasses(target);
+            if (classes == null) {
+                // not all of the closure was written there
+                return;
+            }
+            written.add(classes);
+        }
+        bestSize = size;
+        // all the targets are replaced at once, so the folder never mixes two closures; an interruption between
+        // the two moves leaves the previous best closure in `old`
+        final Path tmp = bestFolder.resolveSibling(bestFolder.getFileName() + ".tmp");
+        final Path old = bestFolder.resolveSibling(bestFolder.getFileName() + ".old");
+        FileUtils.deleteDirectory(tmp.toFile());
+        for (int i = 0; i < written.size(); ++i) {
+            final Path best = tmp.resolve(classPool.getOutputPath().get(i).getFileName().toString());
+            Files.createDirectories(best);
+            for (final Map.Entry<String, byte[]> entry: written.get(i).entrySet()) {
+                final Path output = best.resolve(entry.getKey());
+                Files.createDirectories(output.getParent());
+                Files.write(output, entry.getValue());
+            }
+        }
+        Files.createDirectories(tmp);
+        FileUtils.deleteDirectory(old.toFile());
+        if (Files.exists(bestFolder)) {
+            Files.move(bestFolder, old, StandardCopyOption.ATOMIC_MOVE);
+        }
+        Files.move(tmp, bestFolder, StandardCopyOption.ATOMIC_MOVE);
+        FileUtils.deleteDirectory(old.toFile());
+        if (GlobalConfig.debug)
+            GlobalConfig.println("\tBest closure: " + size + " reduction points, " + predicateRuns.get()
+                    + " predicate runs");
+    }
+}
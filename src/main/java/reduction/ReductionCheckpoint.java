@@ -0,0 +1,94 @@
+package reduction;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
+import java.util.Properties;
+
+/**
+ * The state of a BinaryPolicy between two progressions, enough to continue a killed reduction.
+ * The elements are identified by their positions in the initial sorted space, see PredicateJournal.
+ */
+public class ReductionCheckpoint {
+    // the pass of a fixed point the search belongs to (see WorkingEnv.runReductionFixedPoint), 0 otherwise
+    public final int round;
+    public final int pass;
+    // -1 before the search of the pass saved its state
+    public final int size;
+    public final int retryCounter;
+    public final BitSet progressions;
+    public final BitSet sortedSpace;
+    // null if no closure passed yet
+    public final BitSet lastValidAttempt;
+    // digest of the classes written for `progressions`, checks that the elements are numbered the same way
+    public final String digest;
+
+    public ReductionCheckpoint(final int round, final int pass, final int size, final int retryCounter,
+                               final BitSet progressions, final BitSet sortedSpace, final BitSet lastValidAttempt,
+                               final String digest) {
+        this.round = round;
+        this.pass = pass;
+        this.size = size;
+        this.retryCounter = retryCounter;
+        this.progressions = progressions;
+        this.sortedSpace = sortedSpace;
+        this.lastValidAttempt = lastValidAttempt;
+        this.digest = digest;
+    }
+
+    // The start of a pass, which has no search state yet
+    public static ReductionCheckpoint ofPass(final int round, final int pass) {
+        return new ReductionCheckpoint(round, pass, -1, 0, new BitSet(), new BitSet(), null, null);
+    }
+
+    /**
+     * Replace the checkpoint at `path` atomically, a crash leaves either the previous or the new one
+     */
+    public void save(final Path path) throws IOException {
+        final Properties properties = new Properties();
+        properties.setProperty("round", String.valueOf(round));
+        properties.setProperty("pass", String.valueOf(pass));
+        properties.setProperty("size", String.valueOf(size));
+        properties.setProperty("retryCounter", String.valueOf(retryCounter));
+        properties.setProperty("progressions", PredicateJournal.encode(progressions));
+        properties.setProperty("sortedSpace", PredicateJournal.encode(sortedSpace));
+        if (lastValidAttempt != null) {
+            properties.setProperty("lastValidAttempt", PredicateJournal.encode(lastValidAttempt));
+        }
+        properties.setProperty("digest", digest == null ? "" : digest);
+
+        final Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (final Writer writer = Files.newBufferedWriter(tmp)) {
+            properties.store(writer, "reduction checkpoint");
+        }
+        Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @return the checkpoint saved at `path`, or null if there is none
+     */
+    public static ReductionCheckpoint load(final Path path) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        final Properties properties = new Properties();
+        try (final Reader reader = Files.newBufferedReader(path)) {
+            properties.load(reader);
+        }
+        final String lastValidAttempt = properties.getProperty("lastValidAttempt");
+        final String digest = properties.getProperty("digest", "");
+        return new ReductionCheckpoint(
+                Integer.parseInt(properties.getProperty("round", "0")),
+                Integer.parseInt(properties.getProperty("pass", "0")),
+                Integer.parseInt(properties.getProperty("size")),
+                Integer.parseInt(properties.getProperty("retryCounter")),
+                PredicateJournal.decode(properties.getProperty("progressions")),
+                PredicateJournal.decode(properties.getProperty("sortedSpace")),
+                lastValidAttempt == null ? null : PredicateJournal.decode(lastValidAttempt),
+                digest.isEmpty() ? null : digest);
+    }
+}
@@ -0,0 +1,126 @@
+package reduction;
+
+import helper.GlobalConfig;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs reduction jobs for the clients of a local socket, in one long-lived JVM which keeps its warm state (JIT,
+ * lib classes, predicate caches) from a job to the next.
+ *
+ * A request is the command-line arguments of the job, one per line, ended by an empty line. The daemon answers
+ * with the progress of the job, line by line, then a last line starting with RESULT or ERROR, and closes the
+ * connection. The request `shutdown` stops the daemon. E.g.
+ * `printf -- '-w\nwork\n-l\nlib\n...\n\n' | nc localhost 7070`
+ */
+public class ReductionDaemon {
+    public static final String RESULT = "RESULT ";
+    public static final String ERROR = "ERROR ";
+    public static final String SHUTDOWN = "shutdown";
+
+    @FunctionalInterface
+    public interface Handler {
+        /**
+         * Run a job, its progress (GlobalConfig.println) going to the client
+         * @return the result line of the job
+         */
+        String run(String[] args) throws Exception;
+    }
+
+    private final int port;
+    private final int parallelism;
+    private final Handler handler;
+    private ServerSocket server;
+
+    /**
+     * @param port of the loopback interface, 0: any free port (see getPort)
+     * @param parallelism number of jobs running at once, the others wait for their turn
+     */
+    public ReductionDaemon(final int port, final int parallelism, final Handler handler) {
+        this.port = port;
+        this.parallelism = parallelism;
+        this.handler = handler;
+        this.server = null;
+    }
+
+    public synchronized void open() throws IOException {
+        if (server == null) {
+            server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        }
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Serve the requests until a shutdown request, the running jobs are completed first
+     */
+    public void serve() throws IOException, InterruptedException {
+        open();
+        GlobalConfig.println("Reduction daemon listening on port " + getPort());
+        final ExecutorService jobs = Executors.newFixedThreadPool(parallelism);
+        try {
+            while (!server.isClosed()) {
+                final Socket client;
+                try {
+                    client = server.accept();
+                } catch (final SocketException ex) {
+                    // closed by a shutdown request
+                    break;
+                }
+                jobs.submit(() -> handle(client));
+            }
+        } finally {
+            jobs.shutdown();
+            while (!jobs.awaitTermination(1, TimeUnit.MINUTES)) {
+                GlobalConfig.println("Waiting for the running jobs");
+            }
+        }
+    }
+
+    public synchronized void close() throws IOException {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    private void handle(final Socket client) {
+        try (final Socket socket = client;
+             final BufferedReader in = new BufferedReader(
+                     new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             final PrintStream out = new PrintStream(socket.getOutputStream(), true, "UTF-8")) {
+            final List<String> args = new ArrayList<>();
+            String line;
+            while ((line = in.readLine()) != null && !line.isEmpty()) {
+                args.add(line);
+            }
+            if (args.size() == 1 && args.get(0).equals(SHUTDOWN)) {
+                out.println(RESULT + SHUTDOWN);
+                close();
+                return;
+            }
+
+            GlobalConfig.setOutput(out);
+            try {
+                out.println(RESULT + handler.run(args.toArray(new String[0])));
+            } catch (final Exception ex) {
+                out.println(ERROR + ex);
+            } finally {
+                GlobalConfig.setOutput(null);
+            }
+        } catch (final IOException ex) {
+            GlobalConfig.println("Reduction daemon client lost: " + ex);
+        }
+    }
+}
@@ -24,9 +24,13 @@ public class ReductionPoint implements Comparable<ReductionPoint> {
 
     public final int globalIndex;
 
+    // estimated number of instructions the reduction removes or retypes, see BinaryPolicy.setWeighted
+    public int weight;
+
     ReductionPoint(final int sort, final int globalIndex) {
         this.sort = sort;
         this.globalIndex = globalIndex;
+        this.weight = 1;
     }
 
     public int getType() {
@@ -0,0 +1,81 @@
+package reduction;
+
+import graph.Hierarchy;
+import jvm.ClassPool;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.function.Function;
+
+/**
+ * How the working envs search for a small set of elements which still preserves the predicate
+ */
+public interface ReductionStrategy<T extends Comparable<? super T>> {
+    String BINARY = "binary";
+    String DDMIN = "ddmin";
+    String PROBDD = "probdd";
+    String CLOSURE = "closure";
+
+    void runReduction(ClassPool classPool, Predicate predicate) throws IOException, InterruptedException;
+
+    // Write & check the reduced classes, falling back on the last passing closure
+    boolean runFinal(ClassPool classPool, Predicate predicate) throws IOException, InterruptedException;
+
+    SortedSet<T> getProgressions();
+
+    void setCache(PredicateCache cache);
+
+    void setJournal(PredicateJournal journal);
+
+    // Stop once the budget is exhausted, keeping the smallest passing closure
+    void setBudget(ReductionBudget budget);
+
+    // The strategies which can't test several candidates at once ignore the workspaces
+    default void setWorkspaces(final List<Workspace> workspaces) {
+    }
+
+    default void setPipelined(final List<Workspace> workspaces) {
+    }
+
+    // Split the searched intervals by the weight of their reduction points (see ReductionPoint.weight)
+    default void setWeighted(final boolean weighted) {
+    }
+
+    // Search each necessary element down from the previous one (see BinaryPolicy.runGallop)
+    default void setGalloping(final boolean galloping) {
+    }
+
+    /**
+     * Save the search state at each progression
+     * @param round & pass: the pass of a fixed point the search belongs to, see ReductionCheckpoint
+     */
+    default void setCheckpoint(final Path checkpointPath, final int round, final int pass) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " can't save checkpoints");
+    }
+
+    /**
+     * @return false if the reduction starts over
+     */
+    default boolean resume(final ClassPool classPool) throws IOException {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " can't resume from a checkpoint");
+    }
+
+    static <T extends Comparable<? super T>> ReductionStrategy<T> create(
+            final String name, final Hierarchy hierarchy, final List<T> sortedSpace,
+            final Function<SortedSet<T>, SortedSet<Integer>> aggregator) {
+        switch (name) {
+            case BINARY:
+                return new BinaryPolicy<>(hierarchy, sortedSpace, aggregator);
+            case DDMIN:
+                return new DDMinPolicy<>(hierarchy, sortedSpace, aggregator);
+            case CLOSURE:
+                return new ClosurePolicy<>(hierarchy, sortedSpace, aggregator);
+            case PROBDD:
+                return new ProbDDPolicy<>(hierarchy, sortedSpace, aggregator);
+            default:
+                throw new IllegalArgumentException("Unknown reduction strategy: " + name);
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package reduction;
+
+import graph.Hierarchy;
+import helper.GlobalConfig;
+import jvm.ClassAnalyzeOptions;
+import jvm.ClassPool;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * The options & the reduction steps shared by the working envs, `P` being the predicate they run
+ */
+public abstract class WorkingEnv<P extends Predicate> {
+    public final Path workingFolder;
+
+    // see FixedPointTracker
+    public boolean fixedPoint = false;
+    public String strategy = ReductionStrategy.BINARY;
+    // see HierarchicalPolicy & ComponentPolicy
+    public boolean hierarchical = false;
+    public boolean components = false;
+    public boolean weighted = false;
+    public boolean galloping = false;
+    public int parallelism = 1;
+    // without parallelism, see BinaryPolicy.runPipelined
+    public boolean pipelined = false;
+    // see PredicateCache & PredicateJournal
+    public boolean usePredicateCache = false;
+    public boolean recordJournal = false;
+    // see BinaryPolicy.resume
+    public boolean useCheckpoint = false;
+    public boolean resume = false;
+    // in milliseconds, 0: unbounded
+    public long predicateTimeout = 0;
+    public boolean timeoutAsPass = false;
+    // see ReductionBudget, covering all the reduction steps
+    public long timeBudget = 0;
+    public int predicateBudget = 0;
+    protected ReductionBudget budget = null;
+    // by path, shared by the jobs of a ReductionDaemon
+    public Map<Path, PredicateCache> predicateCaches = null;
+    // shared by the reduction steps until removeWorkspaces
+    private List<Workspace> workspaces = null;
+    private int round = 0;
+    private int pass = 0;
+
+    protected WorkingEnv(final Path workingFolder) {
+        this.workingFolder = workingFolder;
+    }
+
+    public Path predicateCachePath() {
+        return workingFolder.resolve("predicate_cache.csv");
+    }
+
+    public Path predicateJournalPath() {
+        return workingFolder.resolve("predicate_journal.txt");
+    }
+
+    public Path checkpointPath() {
+        return workingFolder.resolve("reduction_checkpoint.properties");
+    }
+
+    // The smallest passing classes found so far, while a budget is set
+    public Path bestPath() {
+        return workingFolder.resolve("best");
+    }
+
+    protected PredicateCache openPredicateCache() throws IOException {
+        if (predicateCaches == null) {
+            predicateCaches = new HashMap<>();
+        }
+        synchronized (predicateCaches) {
+            PredicateCache cache = predicateCaches.get(predicateCachePath());
+            if (cache == null) {
+                cache = new PredicateCache(predicateCachePath());
+                predicateCaches.put(predicateCachePath(), cache);
+            }
+            return cache;
+        }
+    }
+
+    // The classes the pass of the fixed point started from, while checkpoints are saved
+    public Path passInputPath() {
+        return workingFolder.resolve("pass_input");
+    }
+
+    public Path workspacesPath() {
+        return workingFolder.resolve("workspaces");
+    }
+
+    public Path workspacePath(final int index) {
+        return workspacesPath().resolve("workspace" + index);
+    }
+
+    protected int workspaceCount() {
+        return parallelism > 1 ? parallelism : pipelined ? BinaryPolicy.PIPELINE_WORKSPACES : 0;
+    }
+
+    // The workspaces of the reduction, their predicates ready for the classes of `pool`
+    private List<Workspace> getWorkspaces(final P predicate, final ClassPool pool) throws IOException {
+        if (workspaces == null) {
+            FileUtils.deleteDirectory(workspacesPath().toFile());
+            workspaces = createWorkspaces(predicate);
+        }
+        for (final Workspace workspace: workspaces) {
+            prepareWorkspace(workspace, pool);
+        }
+        return workspaces;
+    }
+
+    protected void removeWorkspaces() throws IOException {
+        if (workspaces != null) {
+            Workspace.removeAll(workspaces);
+            workspaces = null;
+            FileUtils.deleteDirectory(workspacesPath().toFile());
+        }
+    }
+
+    protected abstract List<Path> sourcePaths();
+
+    protected abstract List<Path> targetPaths();
+
+    protected abstract ClassPool createPool(List<Path> input);
+
+    protected abstract void readLibs(ClassPool pool, Hierarchy hierarchy) throws IOException;
+
+    // The classes which are read but never reduced
+    protected Set<String> omittedClasses() {
+        return Collections.emptySet();
+    }
+
+    protected abstract P createPassPredicate(int pass) throws IOException;
+
+    // The order in which the strategy searches `elements`
+    protected List<Integer> searchOrder(final List<Integer> elements, final ClassPool pool, final P predicate) {
+        return elements;
+    }
+
+    protected void preparePredicate(final P predicate, final ClassPool pool) throws IOException {
+    }
+
+    // Get the predicate of `workspace` ready to check the classes written by `pool`
+    protected void prepareWorkspace(final Workspace workspace, final ClassPool pool) throws IOException {
+    }
+
+    protected abstract List<Workspace> createWorkspaces(P predicate) throws IOException;
+
+    /**
+     * Reduce `elements` with the strategy of the options, then write the final classes.
+     * `predicate` is closed once the reduction is over, the workspaces are kept for the next step.
+     */
+    protected Pair<Set<Integer>, Boolean> runReductionElement(
+            final List<Integer> elements,
+            final Hierarchy hierarchy,
+            final ClassPool pool, final P predicate)
+            throws IOException, InterruptedException {
+        final ReductionStrategy<Integer> policy;
+        final boolean isValidFinal;
+        try {
+            final List<Integer> space = searchOrder(elements, pool, predicate);
+            policy = components
+                    ? new ComponentPolicy(strategy, hierarchy, space, ComponentPolicy.partition(hierarchy, space,
+                            pool.getReductionBlocks(), pool.getClassReferences()))
+                    : hierarchical
+                    ? new HierarchicalPolicy(strategy, hierarchy, space, pool.getReductionBlocks())
+                    : ReductionStrategy.create(strategy, hierarchy, space, BinaryPolicy.ID_AGGREGATOR);
+            preparePredicate(predicate, pool);
+            final List<Workspace> workspaces = getWorkspaces(predicate, pool);
+            if (parallelism > 1) {
+                policy.setWorkspaces(workspaces);
+            } else {
+                policy.setPipelined(workspaces);
+            }
+            policy.setWeighted(weighted);
+            policy.setGalloping(galloping);
+            if (budget == null && (timeBudget > 0 || predicateBudget > 0)) {
+                budget = new ReductionBudget(timeBudget, predicateBudget, bestPath());
+            }
+            if (budget != null) {
+                budget.newStep();
+            }
+            policy.setBudget(budget);
+            if (usePredicateCache) {
+                policy.setCache(openPredicateCache());
+            }
+            if (recordJournal) {
+                policy.setJournal(PredicateJournal.record(predicateJournalPath(), elements.size()));
+            }
+            if (useCheckpoint || resume) {
+                policy.setCheckpoint(checkpointPath(), round, pass);
+            }
+            if (resume) {
+                policy.resume(pool);
+            }
+            policy.runReduction(pool, predicate);
+            isValidFinal = policy.runFinal(pool, predicate);
+            if (!fixedPoint) {
+                // the reduction is over, a later run starts afresh
+                Files.deleteIfExists(checkpointPath());
+            }
+        } finally {
+            predicate.close();
+        }
+        if (GlobalConfig.debug) {
+            GlobalConfig.println("Element Level => (" + isValidFinal + ") "
+                    + policy.getProgressions().size() + "/" + hierarchy.reductionPoints.size());
+        }
+
+        return ImmutablePair.of(policy.getProgressions(), isValidFinal);
+    }
+
+    private static ClassAnalyzeOptions passOptions(final int pass) {
+        final ClassAnalyzeOptions options = new ClassAnalyzeOptions();
+        // the classes are in the hierarchy already, a pass only refreshes their members
+        options.addHierarchy = false;
+        options.refreshHierarchy = true;
+        if (pass == JReduceWorkingEnv.classCollapse) {
+            options.addMethodRemoval = false;
+            options.addInitMethodRemoval = false;
+            options.doMethodWithTryCatch = false;
+            options.addParamSubtyping = true;
+        }
+        return options;
+    }
+
+    /**
+     * Run the passes in rounds over one hierarchy, each reading the classes the previous one wrote in the targets,
+     * until a round changes no class. With checkpoints, the classes a pass starts from are saved in passInputPath,
+     * and a resumed fixed point starts again at the pass of the checkpoint.
+     * @return the outcome of the last pass which reduced anything
+     */
+    protected Pair<Set<Integer>, Boolean> runReductionFixedPoint(final Hierarchy hierarchy)
+            throws IOException, InterruptedException {
+        final ClassAnalyzeOptions startOption = new ClassAnalyzeOptions();
+        startOption.doReduction = false;
+        startOption.checkClassAdapter = false;
+        startOption.addMethodRemoval = false;
+        final ClassPool startPool = createPool(sourcePaths());
+        readLibs(startPool, hierarchy);
+        startPool.readClasses(hierarchy, omittedClasses(), startOption);
+        hierarchy.addEdges();
+
+        final boolean checkpoints = useCheckpoint || resume;
+        final FixedPointTracker tracker = new FixedPointTracker();
+        final int[] passes = {JReduceWorkingEnv.methodRemoval, JReduceWorkingEnv.classCollapse};
+        round = 0;
+        pass = 0;
+        final ReductionCheckpoint checkpoint = resume ? ReductionCheckpoint.load(checkpointPath()) : null;
+        boolean resumed = checkpoint != null
+                && ((checkpoint.round == 0 && checkpoint.pass == 0) || Files.isDirectory(passInputPath()));
+        if (resumed) {
+            round = checkpoint.round;
+            pass = checkpoint.pass;
+            if (GlobalConfig.debug)
+                GlobalConfig.println("Resuming the fixed point at round " + round + ", pass " + pass);
+        }
+        boolean fromSource = round == 0 && pass == 0;
+        if (!fromSource) {
+            tracker.resumeAt(round);
+        }
+
+        Pair<Set<Integer>, Boolean> result = ImmutablePair.of(new HashSet<>(), true);
+        do {
+            for (; pass < passes.length; ++pass) {
+                List<Path> input = fromSource ? sourcePaths() : targetPaths();
+                if (checkpoints && !fromSource) {
+                    if (!resumed) {
+                        savePassInput();
+                    }
+                    input = passInputPaths();
+                }
+                if (checkpoints && !resumed) {
+                    ReductionCheckpoint.ofPass(round, pass).save(checkpointPath());
+                }
+                resumed = false;
+
+                final Map<String, String> before = FixedPointTracker.hashClasses(fromSource ? targetPaths() : input);
+                final Set<String> skipped = new HashSet<>(omittedClasses());
+                if (!fromSource) {
+                    skipped.addAll(tracker.unchanged(passes[pass], before));
+                }
+
+                hierarchy.clearReductionPoint();
+                final ClassPool pool = createPool(input);
+                pool.readClasses(hierarchy, skipped, passOptions(passes[pass]));
+                final List<Integer> list = new ArrayList<>();
+                for (int i = 0; i < hierarchy.reductionPoints.size(); ++i) {
+                    list.add(i);
+                }
+                if (GlobalConfig.debug)
+                    GlobalConfig.println("Pass " + passes[pass] + ": " + list.size() + " reduction points, "
+                            + skipped.size() + " classes not analyzed");
+                if (!list.isEmpty()) {
+                    result = runReductionElement(list, hierarchy, pool, createPassPredicate(passes[pass]));
+                } else if (fromSource || checkpoints) {
+                    pool.identityWriteClasses(hierarchy);
+                }
+
+                tracker.ran(passes[pass], before, FixedPointTracker.hashClasses(targetPaths()));
+                fromSource = false;
+            }
+            pass = 0;
+            round += 1;
+        } while (tracker.nextRound() && (budget == null || !budget.isExhausted()));
+
+        Files.deleteIfExists(checkpointPath());
+        FileUtils.deleteDirectory(passInputPath().toFile());
+        return result;
+    }
+
+    private List<Path> passInputPaths() {
+        final List<Path> paths = new ArrayList<>();
+        for (int i = 0; i < targetPaths().size(); ++i) {
+            paths.add(passInputPath().resolve(String.valueOf(i)));
+        }
+        return paths;
+    }
+
+    // Replace the saved pass input by the targets, a crash leaves either the previous or the new one
+    private void savePassInput() throws IOException {
+        final Path tmp = passInputPath().resolveSibling(passInputPath().getFileName() + ".tmp");
+        FileUtils.deleteDirectory(tmp.toFile());
+        final List<Path> targets = targetPaths();
+        for (int i = 0; i < targets.size(); ++i) {
+            if (Files.isDirectory(targets.get(i))) {
+                FileUtils.copyDirectory(targets.get(i).toFile(), tmp.resolve(String.valueOf(i)).toFile());
+            } else {
+                Files.createDirectories(tmp.resolve(String.valueOf(i)));
+            }
+        }
+        FileUtils.deleteDirectory(passInputPath().toFile());
+        Files.move(tmp, passInputPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,33 @@
+package reduction;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * An isolated candidate folder: its own copy of the target paths and a predicate running inside it
+ */
+public class Workspace {
+    public final Path folder;
+    public final List<Path> targetPath;
+    public final Predicate predicate;
+
+    public Workspace(final Path folder, final List<Path> targetPath, final Predicate predicate) {
+        this.folder = folder;
+        this.targetPath = targetPath;
+        this.predicate = predicate;
+    }
+
+    public void remove() throws IOException {
+        predicate.close();
+        FileUtils.deleteDirectory(folder.toFile());
+    }
+
+    public static void removeAll(final List<Workspace> workspaces) throws IOException {
+        for (final Workspace workspace: workspaces) {
+            workspace.remove();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package reduction;
+
+import graph.Hierarchy;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The components are the classes connected by their references or by the implications of their reduction points
+ */
+public class ComponentPolicyTest {
+    // Class i owns the reduction points {2i, 2i + 1}
+    private static List<ReductionBlock> blocks(final String... classes) {
+        final List<ReductionBlock> blocks = new ArrayList<>();
+        for (int i = 0; i < classes.length; ++i) {
+            blocks.add(new ReductionBlock(classes[i], new TreeSet<>(Arrays.asList(2 * i, 2 * i + 1))));
+        }
+        return blocks;
+    }
+
+    private static Map<String, Set<String>> references(final String... fromAndTo) {
+        final Map<String, Set<String>> references = new HashMap<>();
+        for (int i = 0; i < fromAndTo.length; i += 2) {
+            references.computeIfAbsent(fromAndTo[i], (x) -> new HashSet<>());
+            if (fromAndTo[i + 1] != null) {
+                references.get(fromAndTo[i]).add(fromAndTo[i + 1]);
+            }
+        }
+        return references;
+    }
+
+    private static List<Integer> elements(final int size) {
+        final List<Integer> elements = new ArrayList<>();
+        for (int i = 0; i < size; ++i) {
+            elements.add(i);
+        }
+        return elements;
+    }
+
+    @Test
+    public void joinsTheReferencingClasses() {
+        // B refers to A and to a lib class, C is on its own, B$1 is decompiled with B
+        final List<List<Integer>> components = ComponentPolicy.partition(new Hierarchy(), elements(8),
+                blocks("p/A", "p/B", "p/C", "p/B$1"),
+                references("p/A", null, "p/B", "p/A", "p/B", "java/lang/Object", "p/C", "java/lang/Object",
+                        "p/B$1", null));
+        assertEquals(Arrays.asList(Arrays.asList(0, 1, 2, 3, 6, 7), Arrays.asList(4, 5)), components);
+    }
+
+    @Test
+    public void joinsTheClassesOfImpliedReductionPoints() {
+        final Hierarchy hierarchy = new Hierarchy();
+        hierarchy.addImplication(5, 0);
+        final List<List<Integer>> components = ComponentPolicy.partition(hierarchy, elements(6),
+                blocks("p/A", "p/B", "p/C"), references("p/A", null, "p/B", null, "p/C", null));
+        assertEquals(Arrays.asList(Arrays.asList(0, 1, 4, 5), Arrays.asList(2, 3)), components);
+    }
+
+    @Test
+    public void keepsTheElementsOfNoClassTogether() {
+        final List<List<Integer>> components = ComponentPolicy.partition(new Hierarchy(), elements(6),
+                blocks("p/A", "p/B"), references("p/A", null, "p/B", null));
+        assertEquals(Arrays.asList(Arrays.asList(0, 1), Arrays.asList(2, 3), Arrays.asList(4, 5)), components);
+    }
+}
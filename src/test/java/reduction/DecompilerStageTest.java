@@ -0,0 +1,169 @@
+package reduction;
+
+import helper.HashUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * The incremental decompilation only decompiles again the groups whose code or dependencies' declarations changed
+ */
+public class DecompilerStageTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private RecordingStage stage;
+    private Path output;
+
+    // Decompiles a class to the hash of its bytes, recording the classes it was asked for
+    static class RecordingStage extends DecompilerStage {
+        final List<String> decompiled = new ArrayList<>();
+
+        RecordingStage(final Path jar) throws IOException {
+            super("recording", jar);
+        }
+
+        @Override
+        protected void decompile(final SortedMap<String, byte[]> classes, final List<String> toDecompile,
+                                 final Map<String, String> sources) throws IOException {
+            for (final String path: toDecompile) {
+                checkInterruption();
+                decompiled.add(path);
+                sources.put(path.replace(".class", ".java"), HashUtils.hash(classes.get(path)));
+            }
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        stage = new RecordingStage(folder.newFile("decompiler.jar").toPath());
+        stage.setIncremental(true);
+        output = folder.getRoot().toPath().resolve("cfr");
+    }
+
+    // `name` extends `superName`, with a static method `callee` calling `target`.f() and a method `g` pushing `body`
+    private static byte[] cls(final String name, final String superName, final String target,
+                              final boolean withG, final int body, final String... extraMethods) {
+        final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(V1_8, ACC_PUBLIC, name, null, superName, null);
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "f", "()V", null, null);
+        mv.visitCode();
+        if (target != null) {
+            mv.visitMethodInsn(INVOKESTATIC, target, "f", "()V", false);
+        }
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        if (withG) {
+            mv = cw.visitMethod(ACC_PUBLIC, "g", "()V", null, null);
+            mv.visitCode();
+            mv.visitLdcInsn(body);
+            mv.visitInsn(POP);
+            mv.visitInsn(RETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+        for (final String extra: extraMethods) {
+            mv = cw.visitMethod(ACC_PUBLIC, extra, "()V", null, null);
+            mv.visitCode();
+            mv.visitInsn(RETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    // A calls B, B extends D, C is on its own
+    private static SortedMap<String, byte[]> classes(final byte[] b, final byte[] c, final byte[] d) {
+        final SortedMap<String, byte[]> classes = new TreeMap<>();
+        classes.put("p/A.class", cls("p/A", "java/lang/Object", "p/B", false, 0));
+        classes.put("p/B.class", b);
+        classes.put("p/C.class", c);
+        classes.put("p/D.class", d);
+        return classes;
+    }
+
+    private List<String> run(final SortedMap<String, byte[]> classes) throws IOException {
+        stage.decompiled.clear();
+        stage.run(classes, output);
+        final List<String> decompiled = new ArrayList<>(stage.decompiled);
+        Collections.sort(decompiled);
+        return decompiled;
+    }
+
+    @Test
+    public void decompilesOnlyTheGroupsDependingOnAChange() throws IOException {
+        final byte[] b = cls("p/B", "p/D", null, true, 1);
+        final byte[] c = cls("p/C", "java/lang/Object", null, true, 1);
+        final byte[] d = cls("p/D", "java/lang/Object", null, false, 0);
+        assertEquals(Arrays.asList("p/A.class", "p/B.class", "p/C.class", "p/D.class"), run(classes(b, c, d)));
+        assertEquals(Collections.emptyList(), run(classes(b, c, d)));
+
+        // the code of a class is only seen by its own group
+        assertEquals(Collections.singletonList("p/C.class"),
+                run(classes(b, cls("p/C", "java/lang/Object", null, true, 2), d)));
+        assertEquals(Collections.singletonList("p/B.class"),
+                run(classes(cls("p/B", "p/D", null, true, 2), c, d)));
+
+        // A resolves its call against the declarations of B
+        assertEquals(Arrays.asList("p/A.class", "p/B.class"),
+                run(classes(cls("p/B", "p/D", null, false, 0), c, d)));
+
+        // and against the ones of its supertypes
+        assertEquals(Arrays.asList("p/A.class", "p/B.class", "p/D.class"),
+                run(classes(cls("p/B", "p/D", null, false, 0), c,
+                        cls("p/D", "java/lang/Object", null, false, 0, "h"))));
+    }
+
+    @Test
+    public void stopsBetweenTheClasses() throws IOException {
+        final byte[] b = cls("p/B", "p/D", null, true, 1);
+        final byte[] c = cls("p/C", "java/lang/Object", null, true, 1);
+        final byte[] d = cls("p/D", "java/lang/Object", null, false, 0);
+        stage.decompiled.clear();
+        try {
+            stage.run(classes(b, c, d), output, () -> {
+                if (stage.decompiled.size() == 2) {
+                    throw new ProcessPredicate.PredicateTimeoutException("out of time");
+                }
+            });
+            fail("decompiled after the interruption");
+        } catch (final ProcessPredicate.PredicateTimeoutException ex) {
+            assertEquals(2, stage.decompiled.size());
+        }
+        // nothing was written, the next run decompiles everything
+        assertEquals(Arrays.asList("p/A.class", "p/B.class", "p/C.class", "p/D.class"), run(classes(b, c, d)));
+    }
+
+    @Test
+    public void keepsTheSourcesInLineWithTheClasses() throws IOException {
+        final byte[] b = cls("p/B", "p/D", null, true, 1);
+        final byte[] c = cls("p/C", "java/lang/Object", null, true, 1);
+        final byte[] d = cls("p/D", "java/lang/Object", null, false, 0);
+        run(classes(b, c, d));
+
+        final SortedMap<String, byte[]> reduced = classes(cls("p/B", "p/D", null, false, 0), c, d);
+        reduced.remove("p/C.class");
+        run(reduced);
+        final Path src = output.resolve("src");
+        assertTrue(!Files.exists(src.resolve("p/C.java")));
+        for (final Map.Entry<String, byte[]> cls: reduced.entrySet()) {
+            assertEquals(HashUtils.hash(cls.getValue()), new String(Files.readAllBytes(
+                    src.resolve(cls.getKey().replace(".class", ".java")))));
+        }
+    }
+}
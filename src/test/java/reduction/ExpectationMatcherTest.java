@@ -0,0 +1,72 @@
+package reduction;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The matcher agrees with comparing the whole output to the expectation
+ */
+public class ExpectationMatcherTest {
+    private static ExpectationMatcher feed(final String expectation, final String... lines) {
+        final ExpectationMatcher matcher = new ExpectationMatcher(expectation);
+        for (final String line: lines) {
+            matcher.accept(line);
+        }
+        return matcher;
+    }
+
+    @Test
+    public void matchesTheSameLines() {
+        final ExpectationMatcher matcher = feed("a\nb\n", "a", "b");
+        assertTrue(matcher.matches());
+        assertNull(matcher.getDivergence());
+        assertTrue(feed("").matches());
+        assertTrue(feed("\n", "").matches());
+    }
+
+    @Test
+    public void stopsAtTheFirstDifference() {
+        final ExpectationMatcher matcher = new ExpectationMatcher("a\nb\nc\n");
+        assertTrue(matcher.accept("a"));
+        assertFalse(matcher.accept("x"));
+        assertFalse(matcher.accept("c"));
+        assertFalse(matcher.matches());
+        assertEquals("line 2: expected: b, got: x", matcher.getDivergence());
+    }
+
+    @Test
+    public void rejectsAShorterOrLongerOutput() {
+        final ExpectationMatcher shorter = feed("a\nb\n", "a");
+        assertFalse(shorter.matches());
+        assertEquals("line 2: expected: b, got end of output", shorter.getDivergence());
+
+        final ExpectationMatcher longer = feed("a\n", "a", "b");
+        assertTrue(longer.hasDiverged());
+        assertFalse(longer.matches());
+        assertEquals("line 2: expected end of output, got: b", longer.getDivergence());
+
+        assertFalse(feed("", "a").matches());
+    }
+
+    @Test
+    public void neverMatchesAnExpectationWithoutTheFinalNewline() {
+        assertFalse(feed("a\nb", "a", "b").matches());
+    }
+
+    @Test
+    public void countsTheExpectedLines() {
+        final ExpectationMatcher matcher = new ExpectationMatcher("a\nb\na\n");
+        assertEquals(3, matcher.expectedLines());
+        final Map<String, Integer> counts = new HashMap<>();
+        counts.put("a", 2);
+        counts.put("b", 1);
+        assertEquals(counts, matcher.expectedCounts());
+    }
+}
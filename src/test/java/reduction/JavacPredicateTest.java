@@ -0,0 +1,159 @@
+package reduction;
+
+import helper.GlobalConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * The incremental compilation recompiles the dependents of a change, and reports the errors of a full one
+ */
+public class JavacPredicateTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path src;
+    private final ByteArrayOutputStream log = new ByteArrayOutputStream();
+
+    @Before
+    public void setUp() throws IOException {
+        src = folder.newFolder("src").toPath().toAbsolutePath();
+        folder.newFolder("lib");
+        Files.write(folder.getRoot().toPath().resolve("expectation"), new byte[0]);
+        GlobalConfig.debugPredicate = true;
+        GlobalConfig.setOutput(new PrintStream(log, true));
+    }
+
+    @After
+    public void tearDown() {
+        GlobalConfig.debugPredicate = false;
+        GlobalConfig.setOutput(null);
+    }
+
+    private JavacPredicate predicate(final boolean incremental) throws IOException {
+        final Path root = folder.getRoot().toPath();
+        // saveDiff: the full compilation collects all the errors
+        final JavacPredicate predicate = new JavacPredicate(root, "cfr", root.resolve("predicate.sh"),
+                root.resolve("compile.sh"), root.resolve("target"), root.resolve("lib"),
+                root.resolve("expectation"), !incremental);
+        predicate.setIncremental(incremental);
+        return predicate;
+    }
+
+    private void write(final Map<String, String> sources) throws IOException {
+        for (final Map.Entry<String, String> source: sources.entrySet()) {
+            final Path file = src.resolve(source.getKey());
+            Files.createDirectories(file.getParent());
+            Files.write(file, source.getValue().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static Map<String, String> sources(final String... pathsAndContents) {
+        final Map<String, String> sources = new TreeMap<>();
+        for (int i = 0; i < pathsAndContents.length; i += 2) {
+            sources.put(pathsAndContents[i], pathsAndContents[i + 1]);
+        }
+        return sources;
+    }
+
+    private static List<String> sorted(final List<String> lines) {
+        final List<String> copy = new ArrayList<>(lines);
+        Collections.sort(copy);
+        return copy;
+    }
+
+    // Compile `before`, then `changed` incrementally, and compare the errors with a full compilation
+    private void assertDependentRecompiled(final Map<String, String> before, final Map<String, String> changed,
+                                           final String dependent) throws IOException {
+        final JavacPredicate incremental = predicate(true);
+        write(before);
+        assertTrue(incremental.compileIncremental(src, JavacPredicate.listSources(src)).errorLines.isEmpty());
+
+        write(changed);
+        log.reset();
+        final List<String> errors = sorted(
+                incremental.compileIncremental(src, JavacPredicate.listSources(src)).errorLines);
+        final List<String> expected = sorted(
+                predicate(false).compile(src, JavacPredicate.listSources(src)).errorLines);
+
+        assertFalse(expected.isEmpty());
+        assertTrue(expected.get(0).startsWith(dependent + ": "));
+        assertEquals(expected, errors);
+        // the unrelated source was not compiled again
+        assertTrue(log.toString(), log.toString().contains("Recompiled 3/4 sources"));
+    }
+
+    @Test
+    public void recompilesTheUsersOfAnInheritedMember() throws IOException {
+        final Map<String, String> before = sources(
+                "p/B.java", "package p; public class B { public void foo() {} }",
+                "p/A.java", "package p; public class A extends B {}",
+                "p/C.java", "package p; class C { void m(A a) { a.foo(); } }",
+                "p/Z.java", "package p; class Z {}");
+        assertDependentRecompiled(before, sources("p/B.java", "package p; public class B {}"), "p/C.java");
+    }
+
+    @Test
+    public void recompilesTheStaticImports() throws IOException {
+        final Map<String, String> before = sources(
+                "p/S.java", "package p; public class S { public static int X = 1; }",
+                "q/U.java", "package q; import static p.S.X; class U { int y = X; }",
+                "q/V.java", "package q; class V { U u; }",
+                "p/Z.java", "package p; class Z {}");
+        assertDependentRecompiled(before, sources("p/S.java", "package p; public class S { public static int Y = 1; }"),
+                "q/U.java");
+    }
+
+    @Test
+    public void recompilesTheUsersOfASecondaryType() throws IOException {
+        final Map<String, String> before = sources(
+                "p/B.java", "package p; public class B {} class Helper { static void h() {} }",
+                "p/U.java", "package p; class U { void m() { Helper.h(); } }",
+                "p/V.java", "package p; class V { U u; }",
+                "p/Z.java", "package p; class Z {}");
+        assertDependentRecompiled(before, sources("p/B.java", "package p; public class B {} class Helper {}"),
+                "p/U.java");
+    }
+
+    @Test(expected = CancellationException.class)
+    public void stopsOnceCancelled() throws IOException {
+        write(sources("p/A.java", "package p; class A {}"));
+        final JavacPredicate predicate = predicate(false);
+        predicate.cancel();
+        predicate.compile(src, JavacPredicate.listSources(src));
+    }
+
+    @Test
+    public void stopsOnceOutOfTime() throws IOException, InterruptedException {
+        write(sources("p/A.java", "package p; class A {}"));
+        final JavacPredicate predicate = predicate(true);
+        predicate.setTimeout(1, false);
+        predicate.beginRun();
+        Thread.sleep(10);
+        try {
+            predicate.compileIncremental(src, JavacPredicate.listSources(src));
+            fail("compiled after the deadline");
+        } catch (final ProcessPredicate.PredicateTimeoutException ex) {
+            // the next run compiles everything again
+        }
+        predicate.setTimeout(0, false);
+        predicate.beginRun();
+        assertTrue(predicate.compileIncremental(src, JavacPredicate.listSources(src)).success);
+    }
+}
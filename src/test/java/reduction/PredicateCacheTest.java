@@ -0,0 +1,85 @@
+package reduction;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * An outcome is only reused for the same predicate on the same classes, across runs
+ */
+public class PredicateCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = folder.getRoot().toPath();
+        Files.write(root.resolve("predicate.sh"), "grep -q foo".getBytes());
+        Files.write(root.resolve("compile.sh"), "javac".getBytes());
+        Files.write(root.resolve("expectation"), new byte[0]);
+        folder.newFolder("lib");
+    }
+
+    private JReducePredicate predicate() throws IOException {
+        return new JReducePredicate(root, "cfr", root.resolve("predicate.sh"), root.resolve("compile.sh"),
+                root.resolve("target"), root.resolve("lib"), root.resolve("expectation"), false);
+    }
+
+    @Test
+    public void keysByThePredicateAndTheClasses() throws IOException {
+        final String key = PredicateCache.key(predicate(), "digest");
+        assertEquals(key, PredicateCache.key(predicate(), "digest"));
+        assertNotEquals(key, PredicateCache.key(predicate(), "other"));
+
+        // the scripts are part of the identity
+        Files.write(root.resolve("predicate.sh"), "grep -q bar".getBytes());
+        final String changedScript = PredicateCache.key(predicate(), "digest");
+        assertNotEquals(key, changedScript);
+
+        // and so are the timeout and the way the classes are decompiled
+        final JReducePredicate withTimeout = predicate();
+        withTimeout.setTimeout(10, false);
+        final String timeoutKey = PredicateCache.key(withTimeout, "digest");
+        assertNotEquals(changedScript, timeoutKey);
+        withTimeout.setTimeout(10, true);
+        assertNotEquals(timeoutKey, PredicateCache.key(withTimeout, "digest"));
+
+        final JReducePredicate inProcess = predicate();
+        inProcess.setDecompilerStage(new DecompilerStageTest.RecordingStage(folder.newFile("decompiler.jar").toPath()),
+                null);
+        assertNotEquals(changedScript, PredicateCache.key(inProcess, "digest"));
+    }
+
+    @Test
+    public void keepsTheOutcomesAcrossRuns() throws IOException {
+        final Path path = root.resolve("cache.csv");
+        final PredicateCache cache = new PredicateCache(path);
+        assertNull(cache.get("a:1"));
+        cache.put("a:1", true, 12);
+        cache.put("a:2", false, 3);
+        assertTrue(cache.get("a:1").outcome);
+        assertEquals(1, cache.getHits());
+
+        // a record cut by an interrupted run is ignored
+        Files.write(path, "a:3,tr".getBytes(), StandardOpenOption.APPEND);
+        final PredicateCache reloaded = new PredicateCache(path);
+        assertEquals(2, reloaded.size());
+        assertEquals(12, reloaded.get("a:1").duration);
+        assertFalse(reloaded.get("a:2").outcome);
+        assertNull(reloaded.get("a:3"));
+    }
+}
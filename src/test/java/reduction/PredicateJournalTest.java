@@ -0,0 +1,122 @@
+package reduction;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A journal replays the recorded outcomes, and decides the others by monotonicity
+ */
+public class PredicateJournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path path;
+
+    @Before
+    public void setUp() {
+        path = folder.getRoot().toPath().resolve("journal");
+    }
+
+    private static BitSet bits(final int... indexes) {
+        final BitSet bits = new BitSet();
+        for (final int index: indexes) {
+            bits.set(index);
+        }
+        return bits;
+    }
+
+    @Test
+    public void encodesTheClosuresAsRanges() {
+        assertEquals("", PredicateJournal.encode(new BitSet()));
+        assertEquals("0-2,5,7-8", PredicateJournal.encode(bits(0, 1, 2, 5, 7, 8)));
+        for (final String ranges: Arrays.asList("", "3", "0-2,5,7-8", "1,3,5-100")) {
+            assertEquals(ranges, PredicateJournal.encode(PredicateJournal.decode(ranges)));
+        }
+    }
+
+    @Test
+    public void replaysTheRecordedSessions() throws IOException {
+        final PredicateJournal first = PredicateJournal.record(path, 10);
+        first.append(bits(1, 2), true, 5, "abc");
+        first.append(bits(1), false, 3, null);
+        final PredicateJournal second = first.session(4);
+        second.append(bits(0, 3), true, 1, null);
+
+        final List<PredicateJournal> sessions = PredicateJournal.load(path);
+        assertEquals(2, sessions.size());
+        final PredicateJournal replay = sessions.get(0);
+        assertTrue(replay.isReplay());
+        assertEquals(10, replay.size);
+        assertEquals(8, replay.getRecordedDuration());
+        assertTrue(replay.replay(bits(1, 2)));
+        assertFalse(replay.replay(bits(1)));
+        assertEquals(0, replay.getMisses());
+        assertEquals(4, sessions.get(1).size);
+        assertTrue(sessions.get(1).replay(bits(0, 3)));
+    }
+
+    @Test
+    public void decidesTheMissingClosuresByMonotonicity() throws IOException {
+        final PredicateJournal journal = PredicateJournal.record(path, 10);
+        journal.append(bits(1, 2), true, 5, null);
+        final PredicateJournal replay = PredicateJournal.load(path).get(0);
+        assertTrue(replay.replay(bits(1, 2, 7)));
+        assertFalse(replay.replay(bits(2, 7)));
+        assertEquals(2, replay.getMisses());
+        assertEquals(2, replay.getReplayed());
+    }
+
+    @Test
+    public void skipsTheLinesCutByAnInterruptedRun() throws IOException {
+        PredicateJournal.record(path, 10).append(bits(1), true, 5, null);
+        Files.write(path, "0 12".getBytes(), StandardOpenOption.APPEND);
+        final List<PredicateJournal> sessions = PredicateJournal.load(path);
+        assertEquals(1, sessions.size());
+        assertEquals(5, sessions.get(0).getRecordedDuration());
+    }
+
+    @Test
+    public void writesNothingForAnEmptySession() throws IOException {
+        final PredicateJournal first = PredicateJournal.record(path, 10);
+        first.session(5);
+        first.session(3).append(bits(0), true, 1, null);
+        final List<PredicateJournal> sessions = PredicateJournal.load(path);
+        assertEquals(1, sessions.size());
+        assertEquals(3, sessions.get(0).size);
+    }
+
+    @Test
+    public void writesTheConcurrentSessionsWhole() throws IOException {
+        final PredicateJournal journal = PredicateJournal.record(path, 10);
+        final PredicateJournal a = journal.concurrentSession(2);
+        final PredicateJournal b = journal.concurrentSession(3);
+        a.append(bits(0), false, 1, null);
+        b.append(bits(0), true, 2, null);
+        a.append(bits(1), true, 3, null);
+        b.append(bits(2), false, 4, null);
+        assertFalse(Files.exists(path));
+        b.flush();
+        a.flush();
+
+        final List<PredicateJournal> sessions = PredicateJournal.load(path);
+        assertEquals(2, sessions.size());
+        assertEquals(3, sessions.get(0).size);
+        assertEquals(6, sessions.get(0).getRecordedDuration());
+        assertEquals(2, sessions.get(1).size);
+        assertEquals(4, sessions.get(1).getRecordedDuration());
+    }
+}
@@ -0,0 +1,59 @@
+package reduction;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * A checkpoint is read back as it was saved
+ */
+public class ReductionCheckpointTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void assertSame(final ReductionCheckpoint expected, final ReductionCheckpoint actual) {
+        assertEquals(expected.round, actual.round);
+        assertEquals(expected.pass, actual.pass);
+        assertEquals(expected.size, actual.size);
+        assertEquals(expected.retryCounter, actual.retryCounter);
+        assertEquals(expected.progressions, actual.progressions);
+        assertEquals(expected.sortedSpace, actual.sortedSpace);
+        assertEquals(expected.lastValidAttempt, actual.lastValidAttempt);
+        assertEquals(expected.digest, actual.digest);
+    }
+
+    @Test
+    public void roundTrips() throws IOException {
+        final Path path = folder.getRoot().toPath().resolve("checkpoint");
+        final ReductionCheckpoint checkpoint = new ReductionCheckpoint(2, 1, 7, 3,
+                PredicateJournal.decode("0-3,9"), PredicateJournal.decode("4-8,10"),
+                PredicateJournal.decode("0-5,9"), "d41d8cd9");
+        checkpoint.save(path);
+        assertSame(checkpoint, ReductionCheckpoint.load(path));
+        // the temporary file was moved
+        assertFalse(Files.exists(path.resolveSibling("checkpoint.tmp")));
+
+        final ReductionCheckpoint start = ReductionCheckpoint.ofPass(3, 0);
+        start.save(path);
+        final ReductionCheckpoint loaded = ReductionCheckpoint.load(path);
+        assertSame(start, loaded);
+        assertEquals(-1, loaded.size);
+        assertNull(loaded.lastValidAttempt);
+        assertNull(loaded.digest);
+        assertEquals(new BitSet(), loaded.progressions);
+    }
+
+    @Test
+    public void hasNoCheckpointAtFirst() throws IOException {
+        assertNull(ReductionCheckpoint.load(folder.getRoot().toPath().resolve("checkpoint")));
+    }
+}
@@ -0,0 +1,104 @@
+package reduction;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The searches run on a replayed journal, whose outcomes are decided by monotonicity from the passing closures
+ */
+public class ReductionStrategyTest {
+    static final int SIZE = 20;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // A session of SIZE elements where a closure passes iff it contains one of `passing`
+    private PredicateJournal journal(final String... passing) throws IOException {
+        final Path path = folder.newFile().toPath();
+        final StringBuilder content = new StringBuilder("# " + SIZE + "\n");
+        for (final String closure: passing) {
+            content.append("1 0 - ").append(closure).append('\n');
+        }
+        Files.write(path, content.toString().getBytes(StandardCharsets.UTF_8));
+        return PredicateJournal.load(path).get(0);
+    }
+
+    private static boolean passes(final Set<Integer> closure, final String... passing) {
+        for (final String minimal: passing) {
+            final BitSet bits = PredicateJournal.decode(minimal);
+            boolean contained = true;
+            for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+                contained &= closure.contains(i);
+            }
+            if (contained) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private SortedSet<Integer> reduce(final String strategy, final String... passing)
+            throws IOException, InterruptedException {
+        final List<Integer> elements = new ArrayList<>();
+        for (int i = 0; i < SIZE; ++i) {
+            elements.add(i);
+        }
+        final ReductionStrategy<Integer> policy = ReductionStrategy.create(
+                strategy, null, elements, BinaryPolicy.ID_AGGREGATOR);
+        policy.setJournal(journal(passing));
+        policy.runReduction(null, null);
+        assertTrue(policy.runFinal(null, null));
+        return policy.getProgressions();
+    }
+
+    // The result passes, and none of its elements can be removed
+    private void assertOneMinimal(final String strategy, final String... passing)
+            throws IOException, InterruptedException {
+        final SortedSet<Integer> result = reduce(strategy, passing);
+        assertTrue(result.toString(), passes(result, passing));
+        for (final int element: result) {
+            final Set<Integer> smaller = new TreeSet<>(result);
+            smaller.remove(element);
+            assertFalse(strategy + " keeps " + element + " of " + result, passes(smaller, passing));
+        }
+    }
+
+    @Test
+    public void ddminIsOneMinimal() throws IOException, InterruptedException {
+        assertOneMinimal(ReductionStrategy.DDMIN, "3,11,17");
+        assertOneMinimal(ReductionStrategy.DDMIN, "0-1,19", "5,8");
+        assertOneMinimal(ReductionStrategy.DDMIN, "2-6,9", "4-12", "15");
+    }
+
+    @Test
+    public void probddIsOneMinimal() throws IOException, InterruptedException {
+        assertOneMinimal(ReductionStrategy.PROBDD, "3,11,17");
+        assertOneMinimal(ReductionStrategy.PROBDD, "0-1,19", "5,8");
+        assertOneMinimal(ReductionStrategy.PROBDD, "2-6,9", "4-12", "15");
+    }
+
+    @Test
+    public void findsTheOnlyMinimalClosure() throws IOException, InterruptedException {
+        for (final String strategy: Arrays.asList(ReductionStrategy.BINARY, ReductionStrategy.CLOSURE,
+                ReductionStrategy.DDMIN, ReductionStrategy.PROBDD)) {
+            assertEquals(strategy, new TreeSet<>(Arrays.asList(2, 7, 8, 13)), reduce(strategy, "2,7-8,13"));
+        }
+    }
+
+    @Test
+    public void keepsNothingIfTheEmptyClosurePasses() throws IOException, InterruptedException {
+        assertEquals(Collections.emptySortedSet(), reduce(ReductionStrategy.DDMIN, ""));
+        assertEquals(Collections.emptySortedSet(), reduce(ReductionStrategy.PROBDD, ""));
+    }
+}